@@ -29,23 +29,29 @@ import com.hhandoko.cassandra.migration.api.MigrationInfoService
 import com.hhandoko.cassandra.migration.api.MigrationVersion
 import com.hhandoko.cassandra.migration.api.configuration.CassandraMigrationConfiguration
 import com.hhandoko.cassandra.migration.api.configuration.ConfigurationProperty
+import com.hhandoko.cassandra.migration.api.configuration.ConfigurationSnapshot
+import com.hhandoko.cassandra.migration.api.configuration.InstalledRankAllocation
 import com.hhandoko.cassandra.migration.api.configuration.KeyspaceConfiguration
 import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
 import com.hhandoko.cassandra.migration.internal.command.Baseline
 import com.hhandoko.cassandra.migration.internal.command.Initialize
 import com.hhandoko.cassandra.migration.internal.command.Migrate
 import com.hhandoko.cassandra.migration.internal.command.Validate
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
 import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
 import com.hhandoko.cassandra.migration.internal.info.MigrationInfoServiceImpl
 import com.hhandoko.cassandra.migration.internal.resolver.CompositeMigrationResolver
+import com.hhandoko.cassandra.migration.internal.util.CachePrepareStatement
 import com.hhandoko.cassandra.migration.internal.util.Locations
 import com.hhandoko.cassandra.migration.internal.util.StringUtils
 import com.hhandoko.cassandra.migration.internal.util.VersionPrinter
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
-import com.typesafe.config.ConfigFactory
 import io.github.config4k.extract
 import io.netty.handler.ssl.SslContextBuilder
 import io.netty.handler.ssl.SslProvider
+import java.io.File
 import java.io.FileInputStream
 import java.security.KeyStore
 import javax.net.ssl.KeyManagerFactory
@@ -54,8 +60,11 @@ import javax.net.ssl.TrustManagerFactory
 /**
  * This is the centre point of Cassandra migration, and for most users, the only class they will ever have to deal with.
  * It is THE public API from which all important Cassandra migration functions such as clean, validate and migrate can be called.
+ *
+ * @param snapshot The configuration snapshot to initialize the migration (and keyspace) configuration from, the current
+ *                 one by default (see `ConfigurationSnapshot.reload` to load the configuration again).
  */
-class CassandraMigration : CassandraMigrationConfiguration {
+class CassandraMigration(snapshot: ConfigurationSnapshot = ConfigurationSnapshot.current()) : CassandraMigrationConfiguration {
 
     /**
      * The Cassandra keyspace configuration.
@@ -104,12 +113,67 @@ class CassandraMigration : CassandraMigrationConfiguration {
      */
     override var timeout = 60
 
+    /**
+     * Maximum number of DML statements in flight per CQL migration script, 1 to execute statements one at a time.
+     * (default: 1)
+     */
+    var asyncWindow = 1
+
+    /**
+     * Initial delay between schema agreement checks after schema changes in milliseconds.
+     * (default: 100)
+     */
+    var schemaAgreementBackoff = 100
+
+    /**
+     * Maximum time to wait for schema agreement after schema changes in seconds.
+     * (default: 60)
+     */
+    var schemaAgreementDeadline = 60
+
+    /**
+     * Directory of the parsed CQL scripts statements cache, shared by all runs. The cache is disabled if not set.
+     * (default: null)
+     */
+    var statementCacheDir: String? = null
+
+    /**
+     * Maximum number of CQL scripts in the parsed statements cache.
+     * (default: 1000)
+     */
+    var statementCacheSize = 1000
+
+    /**
+     * Maximum number of bytes of CQL scripts retained in memory between checksum calculation and execution.
+     * (default: 8388608)
+     */
+    var contentBudget = 8388608L
+
+    /**
+     * Number of locations resolved (and of filesystem directories walked per location) concurrently when resolving
+     * migrations, and of migration checksums computed concurrently when validating. 1 to resolve them one at a time.
+     * (default: 1)
+     */
+    var resolveParallelism = 1
+
     /**
      * The prefix to be prepended to `cassandra_migration_version*` table names.
      * (default: "")
      */
     override var tablePrefix = ""
 
+    /**
+     * The installed rank allocation strategy for the migration version table.
+     * (default: InstalledRankAllocation.COUNTER)
+     */
+    var rankAllocation = InstalledRankAllocation.COUNTER
+
+    /**
+     * Record successful migrations in the migration version table asynchronously.
+     * (default: false)
+     */
+    var asyncTableWrites = false
+
     /**
      * Allow out of order migrations.
      * (default: false)
@@ -120,10 +184,9 @@ class CassandraMigration : CassandraMigrationConfiguration {
      * CassandraMigration initialization.
      */
     init {
-        this.keyspaceConfig = KeyspaceConfiguration()
+        this.keyspaceConfig = KeyspaceConfiguration(snapshot)
 
-        ConfigFactory.invalidateCaches()
-        ConfigFactory.load().let {
+        snapshot.config.let {
             it.extract<String?>(ConfigurationProperty.TARGET_VERSION.namespace)?.let {
                 this.target = MigrationVersion.fromVersion(it.trim().toUpperCase())
             }
@@ -148,6 +211,34 @@ class CassandraMigration : CassandraMigrationConfiguration {
                 this.timeout = it
             }
 
+            it.extract<Int?>(ConfigurationProperty.SCRIPTS_ASYNC_WINDOW.namespace)?.let {
+                this.asyncWindow = it
+            }
+
+            it.extract<Int?>(ConfigurationProperty.SCHEMA_AGREEMENT_BACKOFF.namespace)?.let {
+                this.schemaAgreementBackoff = it
+            }
+
+            it.extract<Int?>(ConfigurationProperty.SCHEMA_AGREEMENT_DEADLINE.namespace)?.let {
+                this.schemaAgreementDeadline = it
+            }
+
+            it.extract<String?>(ConfigurationProperty.SCRIPTS_STATEMENT_CACHE_DIR.namespace)?.let {
+                this.statementCacheDir = it.trim()
+            }
+
+            it.extract<Int?>(ConfigurationProperty.SCRIPTS_STATEMENT_CACHE_SIZE.namespace)?.let {
+                this.statementCacheSize = it
+            }
+
+            it.extract<Long?>(ConfigurationProperty.SCRIPTS_CONTENT_BUDGET.namespace)?.let {
+                this.contentBudget = it
+            }
+
+            it.extract<Int?>(ConfigurationProperty.SCRIPTS_RESOLVE_PARALLELISM.namespace)?.let {
+                this.resolveParallelism = it
+            }
+
             it.extract<Boolean?>(ConfigurationProperty.ALLOW_OUT_OF_ORDER.namespace)?.let {
                 this.allowOutOfOrder = it
             }
@@ -155,6 +246,14 @@ class CassandraMigration : CassandraMigrationConfiguration {
             it.extract<String?>(ConfigurationProperty.TABLE_PREFIX.namespace)?.let {
                 this.tablePrefix = it.trim()
             }
+
+            it.extract<String?>(ConfigurationProperty.TABLE_RANK_ALLOCATION.namespace)?.let {
+                this.rankAllocation = InstalledRankAllocation.valueOf(it.trim().toUpperCase())
+            }
+
+            it.extract<Boolean?>(ConfigurationProperty.TABLE_ASYNC_WRITES.namespace)?.let {
+                this.asyncTableWrites = it
+            }
         }
     }
 
@@ -275,101 +374,127 @@ class CassandraMigration : CassandraMigrationConfiguration {
                 session = extSession
                 cluster = extSession.cluster
             } else {
-                // Guard clauses: Cluster and Keyspace must be defined
-                val errorMsg = "Unable to establish Cassandra session"
-                if (keyspaceConfig == null) throw IllegalArgumentException("$errorMsg. Keyspace is not configured.")
-                if (keyspaceConfig.clusterConfig == null) throw IllegalArgumentException("$errorMsg. Cluster is not configured.")
-                if (keyspaceConfig.name.isNullOrEmpty()) throw IllegalArgumentException("$errorMsg. Keyspace is not specified.")
-
-                // Build the Cluster
-                val builder = Cluster.Builder()
-                builder.addContactPoints(*keyspaceConfig.clusterConfig.contactpoints).withPort(keyspaceConfig.clusterConfig.port)
-
-                // Use TokenAware & DCAware load balancing policies
-                builder.withLoadBalancingPolicy(TokenAwarePolicy(DCAwareRoundRobinPolicy.builder().build()))
-
-                if (!keyspaceConfig.clusterConfig.username.isNullOrBlank()) {
-                    if (!keyspaceConfig.clusterConfig.password.isNullOrBlank()) {
-                        builder.withCredentials(keyspaceConfig.clusterConfig.username, keyspaceConfig.clusterConfig.password)
-                    } else {
-                        throw IllegalArgumentException("Password must be provided with username.")
-                    }
-                }
-
-                // Add SSL options to cluster builder
-                if (keyspaceConfig.clusterConfig.enableSsl && keyspaceConfig.clusterConfig.truststore != null) {
-                    FileInputStream(keyspaceConfig.clusterConfig.truststore?.toFile()).use {
-
-                        val sslCtxBuilder = SslContextBuilder.forClient()
-                                .sslProvider(SslProvider.JDK)
-                                // The Java cryptographic extensions (JCE) are required for AES 256
-                                .ciphers(listOf("TLS_RSA_WITH_AES_256_CBC_SHA", "TLS_RSA_WITH_AES_128_CBC_SHA"))
-
-                        val truststore = KeyStore.getInstance("JKS")
-                        truststore.load(it, keyspaceConfig.clusterConfig.truststorePassword?.toCharArray() ?:
-                                throw IllegalArgumentException("Truststore password must be provided with truststore."))
-
-                        val tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm())
-                        tmf.init(truststore)
-                        sslCtxBuilder.trustManager(tmf)
-
-                        if (keyspaceConfig.clusterConfig.keystore != null) {
-                            FileInputStream(keyspaceConfig.clusterConfig.keystore?.toFile()).use {
-
-                                val keystore = KeyStore.getInstance("JKS")
-                                val keystorePass = keyspaceConfig.clusterConfig.keystorePassword?.toCharArray() ?:
-                                        throw IllegalArgumentException("Keystore password must be provided with keystore.")
-                                keystore.load(it, keystorePass)
-
-                                val kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm())
-                                kmf.init(keystore, keystorePass)
-                                sslCtxBuilder.keyManager(kmf)
-                            }
-                        }
-                        builder.withSSL(NettySSLOptions(sslCtxBuilder.build()))
-                    }
-                } else if (keyspaceConfig.clusterConfig.enableSsl) {
-                    builder.withSSL()
-                }
-
-                cluster = builder.build()
-
-                LOG.info(getConnectionInfo(cluster.metadata))
-
-                // Create a new Session
-                session = cluster.newSession()
-
-                // Connect to the specific Keyspace context (if already defined)
-                val keyspaces = cluster.metadata.keyspaces.map { it.name }
-                val keyspaceExists = keyspaces.filter { it.equals(keyspaceConfig.name, ignoreCase = true) }.isNotEmpty()
-                if (keyspaceExists) {
-                    session = cluster.connect(keyspaceConfig.name)
-                } else {
-                    throw CassandraMigrationException("Keyspace: ${keyspaceConfig.name} does not exist.")
-                }
+                cluster = createCluster()
+                session = connect(cluster)
             }
 
-            result = action.execute(session!!)
+            result = action.execute(session)
         } finally {
             // NOTE: We don't close external sessions, and let those sessions be managed outside the Cassandra Migration
             //       lifecycle.
             if (!useExternalSession) {
-                if (session != null && !session.isClosed)
-                    try {
-                        session.close()
-                    } catch (e: Exception) {
-                        LOG.warn("Error closing Cassandra session")
-                    }
+                close(session, cluster)
+            }
+        }
+        return result
+    }
 
-                if (cluster != null && !cluster.isClosed)
-                    try {
-                        cluster.close()
-                    } catch (e: Exception) {
-                        LOG.warn("Error closing Cassandra cluster")
+    /**
+     * Builds the Cluster from the keyspace configuration.
+     *
+     * @return A new, not yet connected, Cluster instance.
+     * @throws IllegalArgumentException when the cluster or keyspace configuration is incomplete.
+     */
+    internal fun createCluster(): Cluster {
+        // Guard clauses: Cluster and Keyspace must be defined
+        val errorMsg = "Unable to establish Cassandra session"
+        if (keyspaceConfig == null) throw IllegalArgumentException("$errorMsg. Keyspace is not configured.")
+        if (keyspaceConfig.clusterConfig == null) throw IllegalArgumentException("$errorMsg. Cluster is not configured.")
+        if (keyspaceConfig.name.isNullOrEmpty()) throw IllegalArgumentException("$errorMsg. Keyspace is not specified.")
+
+        // Build the Cluster
+        val builder = Cluster.Builder()
+        builder.addContactPoints(*keyspaceConfig.clusterConfig.contactpoints).withPort(keyspaceConfig.clusterConfig.port)
+
+        // Use TokenAware & DCAware load balancing policies
+        builder.withLoadBalancingPolicy(TokenAwarePolicy(DCAwareRoundRobinPolicy.builder().build()))
+
+        if (!keyspaceConfig.clusterConfig.username.isNullOrBlank()) {
+            if (!keyspaceConfig.clusterConfig.password.isNullOrBlank()) {
+                builder.withCredentials(keyspaceConfig.clusterConfig.username, keyspaceConfig.clusterConfig.password)
+            } else {
+                throw IllegalArgumentException("Password must be provided with username.")
+            }
+        }
+
+        // Add SSL options to cluster builder
+        if (keyspaceConfig.clusterConfig.enableSsl && keyspaceConfig.clusterConfig.truststore != null) {
+            FileInputStream(keyspaceConfig.clusterConfig.truststore?.toFile()).use {
+
+                val sslCtxBuilder = SslContextBuilder.forClient()
+                        .sslProvider(SslProvider.JDK)
+                        // The Java cryptographic extensions (JCE) are required for AES 256
+                        .ciphers(listOf("TLS_RSA_WITH_AES_256_CBC_SHA", "TLS_RSA_WITH_AES_128_CBC_SHA"))
+
+                val truststore = KeyStore.getInstance("JKS")
+                truststore.load(it, keyspaceConfig.clusterConfig.truststorePassword?.toCharArray() ?:
+                        throw IllegalArgumentException("Truststore password must be provided with truststore."))
+
+                val tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm())
+                tmf.init(truststore)
+                sslCtxBuilder.trustManager(tmf)
+
+                if (keyspaceConfig.clusterConfig.keystore != null) {
+                    FileInputStream(keyspaceConfig.clusterConfig.keystore?.toFile()).use {
+
+                        val keystore = KeyStore.getInstance("JKS")
+                        val keystorePass = keyspaceConfig.clusterConfig.keystorePassword?.toCharArray() ?:
+                                throw IllegalArgumentException("Keystore password must be provided with keystore.")
+                        keystore.load(it, keystorePass)
+
+                        val kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm())
+                        kmf.init(keystore, keystorePass)
+                        sslCtxBuilder.keyManager(kmf)
                     }
+                }
+                builder.withSSL(NettySSLOptions(sslCtxBuilder.build()))
             }
+        } else if (keyspaceConfig.clusterConfig.enableSsl) {
+            builder.withSSL()
         }
-        return result
+
+        return builder.build()
+    }
+
+    /**
+     * Connects to the configured keyspace, with a single session.
+     *
+     * @param cluster The Cluster to connect to.
+     * @return A new Session, logged into the configured keyspace.
+     * @throws CassandraMigrationException when the keyspace does not exist.
+     */
+    internal fun connect(cluster: Cluster): Session {
+        LOG.info(getConnectionInfo(cluster.metadata))
+
+        // Connect to the specific Keyspace context (if already defined)
+        val keyspaceExists = cluster.metadata.keyspaces.any { it.name.equals(keyspaceConfig.name, ignoreCase = true) }
+        if (!keyspaceExists) {
+            throw CassandraMigrationException("Keyspace: ${keyspaceConfig.name} does not exist.")
+        }
+
+        return cluster.connect(keyspaceConfig.name)
+    }
+
+    /**
+     * Closes this session and cluster, if not closed yet. Errors are logged and ignored.
+     *
+     * @param session The Cassandra session to close.
+     * @param cluster The Cassandra cluster to close.
+     */
+    internal fun close(session: Session?, cluster: Cluster?) {
+        if (session != null && !session.isClosed)
+            try {
+                session.close()
+            } catch (e: Exception) {
+                LOG.warn("Error closing Cassandra session")
+            }
+
+        if (cluster != null && !cluster.isClosed)
+            try {
+                cluster.close()
+            } catch (e: Exception) {
+                LOG.warn("Error closing Cassandra cluster")
+            }
     }
 
     /**
@@ -395,10 +520,39 @@ class CassandraMigration : CassandraMigrationConfiguration {
     /**
      * Creates the MigrationResolver.
      *
+     * @param schemaAgreement The schema agreement barrier for CQL migrations, if they are to be executed.
      * @return A new, fully configured, MigrationResolver instance.
      */
-    private fun createMigrationResolver(): MigrationResolver {
-        return CompositeMigrationResolver(classLoader, Locations(*locations), encoding, timeout)
+    private fun createMigrationResolver(schemaAgreement: SchemaAgreement? = null): MigrationResolver {
+        return CompositeMigrationResolver(
+                classLoader,
+                Locations(*locations),
+                encoding,
+                timeout,
+                asyncWindow,
+                schemaAgreement,
+                createStatementCache(),
+                ResourceContent.Budget(contentBudget),
+                resolveParallelism
+        )
+    }
+
+    /**
+     * Creates the CqlStatementCache, if a cache directory is configured.
+     *
+     * @return A configured CqlStatementCache instance, or `null` if the cache is disabled.
+     */
+    private fun createStatementCache(): CqlStatementCache? {
+        return statementCacheDir?.let { CqlStatementCache(File(it), statementCacheSize) }
+    }
+
+    /**
+     * Creates the SchemaAgreement barrier.
+     *
+     * @return A configured SchemaAgreement instance.
+     */
+    private fun createSchemaAgreement(): SchemaAgreement {
+        return SchemaAgreement(schemaAgreementBackoff.toLong(), schemaAgreementDeadline * 1000L)
     }
 
     private fun migrationTableName(): String{
@@ -408,29 +562,37 @@ class CassandraMigration : CassandraMigrationConfiguration {
     /**
      * Creates the SchemaVersionDAO.
      *
+     * @param session The Cassandra session connection.
+     * @param statements The prepared statements cache of the session, if shared across calls.
      * @return A configured SchemaVersionDAO instance.
      */
-    private fun createSchemaVersionDAO(session: Session): SchemaVersionDAO {
-        return SchemaVersionDAO(session, keyspaceConfig, migrationTableName())
+    internal fun createSchemaVersionDAO(session: Session, statements: CachePrepareStatement? = null): SchemaVersionDAO {
+        return SchemaVersionDAO(
+                session, keyspaceConfig, migrationTableName(), rankAllocation, statements ?: CachePrepareStatement(session)
+        )
     }
 
     /**
+     * @param statements The prepared statements cache of the session, if shared across calls.
      * @return The database migration action.
      */
-    private fun migrateAction(): Action<Int> {
+    internal fun migrateAction(statements: CachePrepareStatement? = null): Action<Int> {
         return object: Action<Int> {
             override fun execute(session: Session): Int {
                 Initialize().run(session, keyspaceConfig, migrationTableName())
 
-                val migrationResolver = createMigrationResolver()
-                val schemaVersionDAO = createSchemaVersionDAO(session)
+                val schemaAgreement = createSchemaAgreement()
+                val migrationResolver = createMigrationResolver(schemaAgreement)
+                val schemaVersionDAO = createSchemaVersionDAO(session, statements)
                 val migrate = Migrate(
                         migrationResolver,
                         target,
                         schemaVersionDAO,
                         session,
                         keyspaceConfig.clusterConfig.username ?: "",
-                        allowOutOfOrder
+                        allowOutOfOrder,
+                        asyncTableWrites,
+                        schemaAgreement
                 )
 
                 return migrate.run()
@@ -439,13 +601,14 @@ class CassandraMigration : CassandraMigrationConfiguration {
     }
 
     /**
+     * @param statements The prepared statements cache of the session, if shared across calls.
      * @return The migration info service action.
      */
-    private fun infoAction(): Action<MigrationInfoService> {
+    internal fun infoAction(statements: CachePrepareStatement? = null): Action<MigrationInfoService> {
         return object : Action<MigrationInfoService> {
             override fun execute(session: Session): MigrationInfoService {
                 val migrationResolver = createMigrationResolver()
-                val schemaVersionDAO = createSchemaVersionDAO(session)
+                val schemaVersionDAO = createSchemaVersionDAO(session, statements)
                 val migrationInfoService = MigrationInfoServiceImpl(
                         migrationResolver,
                         schemaVersionDAO,
@@ -461,19 +624,21 @@ class CassandraMigration : CassandraMigrationConfiguration {
     }
 
     /**
+     * @param statements The prepared statements cache of the session, if shared across calls.
      * @return The migration validation action.
      */
-    private fun validateAction(): Action<String?> {
+    internal fun validateAction(statements: CachePrepareStatement? = null): Action<String?> {
         return object : Action<String?> {
             override fun execute(session: Session): String? {
                 val migrationResolver = createMigrationResolver()
-                val schemaVersionDAO = createSchemaVersionDAO(session)
+                val schemaVersionDAO = createSchemaVersionDAO(session, statements)
                 val validate = Validate(
                         migrationResolver,
                         target,
                         schemaVersionDAO,
                         outOfOrder = true,
-                        pendingOrFuture = false
+                        pendingOrFuture = false,
+                        parallelism = resolveParallelism
                 )
 
                 return validate.run()
@@ -482,13 +647,14 @@ class CassandraMigration : CassandraMigrationConfiguration {
     }
 
     /**
+     * @param statements The prepared statements cache of the session, if shared across calls.
      * @return The migration baselining action.
      */
-    private fun baselineAction(): Action<Unit> {
+    internal fun baselineAction(statements: CachePrepareStatement? = null): Action<Unit> {
         return object : Action<Unit> {
             override fun execute(session: Session): Unit {
                 val migrationResolver = createMigrationResolver()
-                val schemaVersionDAO = createSchemaVersionDAO(session)
+                val schemaVersionDAO = createSchemaVersionDAO(session, statements)
                 val baseline = Baseline(
                         migrationResolver,
                         baselineVersion,
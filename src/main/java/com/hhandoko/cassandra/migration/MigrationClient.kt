@@ -0,0 +1,126 @@
+/**
+ * File     : MigrationClient.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration
+
+import com.datastax.driver.core.Cluster
+import com.datastax.driver.core.Session
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.api.MigrationInfoService
+import com.hhandoko.cassandra.migration.internal.util.CachePrepareStatement
+import java.io.Closeable
+
+/**
+ * Long-lived Cassandra migration client, holding a connected Cluster and Session (and the prepared statements of the
+ * migration version table) across calls, e.g. to validate and then migrate on startup, or to call `info()` from health
+ * checks, without connecting again on each call.
+ *
+ * The client is configured from the given CassandraMigration when created, later configuration changes only apply to
+ * the migrations, not to the connection. The client must be closed once no longer used.
+ *
+ * @param migration The Cassandra migration configuration.
+ * @param prewarm True to prepare the statements of the migration version table when connecting, rather than on the
+ *                first migration.
+ */
+class MigrationClient @JvmOverloads constructor(
+    private val migration: CassandraMigration,
+    prewarm: Boolean = false
+) : Closeable {
+
+    /**
+     * The connected Cassandra cluster.
+     */
+    private val cluster: Cluster
+
+    /**
+     * The Cassandra session, logged into the configured keyspace.
+     */
+    val session: Session
+
+    /**
+     * The prepared statements cache of the session, shared by all calls.
+     */
+    private val statements: CachePrepareStatement
+
+    /**
+     * MigrationClient initialization.
+     */
+    init {
+        val connectedCluster = migration.createCluster()
+        try {
+            this.session = migration.connect(connectedCluster)
+            this.cluster = connectedCluster
+            this.statements = CachePrepareStatement(session)
+
+            if (prewarm) {
+                migration.createSchemaVersionDAO(session, statements).prepareStatements()
+            }
+        } catch (e: Exception) {
+            migration.close(null, connectedCluster)
+            throw e
+        }
+    }
+
+    /**
+     * Starts the database migration. All pending migrations will be applied in order.
+     * Calling migrate on an up-to-date database has no effect.
+     *
+     * @return The number of successfully applied migrations.
+     */
+    fun migrate(): Int {
+        return migration.execute(migration.migrateAction(statements), session)
+    }
+
+    /**
+     * Retrieves the complete information about all the migrations including applied, pending and current migrations with
+     * details and status.
+     *
+     * @return All migrations sorted by version, oldest first.
+     */
+    fun info(): MigrationInfoService {
+        return migration.execute(migration.infoAction(statements), session)
+    }
+
+    /**
+     * Validate applied migrations against resolved ones (on the filesystem or classpath)
+     * to detect accidental changes that may prevent the schema(s) from being recreated exactly.
+     *
+     * @throws CassandraMigrationException when the validation failed.
+     */
+    fun validate() {
+        val validationError = migration.execute(migration.validateAction(statements), session)
+
+        if (validationError != null) {
+            throw CassandraMigrationException("Validation failed. $validationError")
+        }
+    }
+
+    /**
+     * Baselines an existing database, excluding all migrations up to and including baselineVersion.
+     */
+    fun baseline() {
+        migration.execute(migration.baselineAction(statements), session)
+    }
+
+    /**
+     * Closes the session and cluster of this client.
+     */
+    override fun close() {
+        migration.close(session, cluster)
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * File     : MigrationIndexGenerator.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration
+
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.internal.resolver.MigrationIndex
+import com.hhandoko.cassandra.migration.internal.resolver.ResolvedMigrationComparator
+import com.hhandoko.cassandra.migration.internal.resolver.cql.CqlMigrationResolver
+import com.hhandoko.cassandra.migration.internal.resolver.java.JavaMigrationResolver
+import com.hhandoko.cassandra.migration.internal.util.Location
+import com.hhandoko.cassandra.migration.internal.util.Locations
+import com.hhandoko.cassandra.migration.internal.util.logging.Log
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import com.hhandoko.cassandra.migration.internal.util.logging.console.ConsoleLog
+import com.hhandoko.cassandra.migration.internal.util.logging.console.ConsoleLogCreator
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext
+import java.io.File
+import java.io.FileOutputStream
+import java.io.OutputStreamWriter
+import java.net.URLClassLoader
+
+/**
+ * Cassandra migration index generator, run at build time to write the migration index of each configured classpath
+ * location into the build output directory, so that the migrations are resolved without scanning the classpath at
+ * runtime (e.g. with the `exec-maven-plugin` in the `process-classes` phase).
+ *
+ * The locations and the encoding are read from the configuration, as for CassandraMigration. Only the migrations
+ * within the build output directory are indexed, each artifact contributing migrations to a location should ship its
+ * own index. The index must be generated again whenever the migrations change.
+ */
+object MigrationIndexGenerator {
+
+    /**
+     * Logging support, created on first use so that the console logging set up by `main` applies.
+     */
+    private val LOG: Log by lazy { LogFactory.getLog(MigrationIndexGenerator::class.java) }
+
+    /**
+     * Main method body.
+     *
+     * @param args The command line arguments, the build output (classes) directory.
+     */
+    @JvmStatic
+    fun main(args: Array<String>) {
+        LogFactory.setLogCreator(ConsoleLogCreator(ConsoleLog.Level.INFO))
+
+        if (args.size != 1) {
+            throw CassandraMigrationException("Usage: MigrationIndexGenerator <classes directory>")
+        }
+
+        val cm = CassandraMigration()
+        generate(File(args[0]), Locations(*cm.locations), cm.encoding)
+    }
+
+    /**
+     * Generates the migration index of these locations.
+     *
+     * @param outputDirectory The build output directory, containing the migrations to index.
+     * @param locations The locations of the migrations.
+     * @param encoding The encoding of the CQL migrations.
+     * @return The index files written.
+     */
+    fun generate(outputDirectory: File, locations: Locations, encoding: String): List<File> {
+        val root = outputDirectory.canonicalFile
+        val classLoader = URLClassLoader(arrayOf(root.toURI().toURL()), Thread.currentThread().contextClassLoader)
+        val scanContext = ScanContext()
+
+        return locations.getLocations().filter(Location::isClassPath).mapNotNull { location ->
+            val cqlMigrations = CqlMigrationResolver(classLoader, location, encoding, 0, scanContext = scanContext)
+            val javaMigrations = JavaMigrationResolver(classLoader, location, scanContext)
+            val migrations = (cqlMigrations.resolveMigrations() + javaMigrations.resolveMigrations())
+                    .filter { File(it.physicalLocation).canonicalFile.startsWith(root) }
+                    .sortedWith(ResolvedMigrationComparator())
+
+            val indexPath = if (location.path!!.isEmpty()) "" else "${location.path}/"
+            val indexFile = File(root, indexPath + MigrationIndex.FILE_NAME)
+            if (migrations.isEmpty()) {
+                // Remove any stale index, so that the location is scanned instead
+                indexFile.delete()
+                null
+            } else {
+                indexFile.parentFile.mkdirs()
+                OutputStreamWriter(FileOutputStream(indexFile), Charsets.UTF_8).use {
+                    MigrationIndex.of(migrations).write(it)
+                }
+                LOG.info("Indexed ${migrations.size} migrations of location $location in $indexFile")
+                indexFile
+            }
+        }
+    }
+
+}
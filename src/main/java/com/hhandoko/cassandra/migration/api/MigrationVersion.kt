@@ -20,7 +20,7 @@ package com.hhandoko.cassandra.migration.api
 
 import java.math.BigInteger
 import java.util.*
-import java.util.regex.Pattern
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * A version of a migration.
@@ -28,15 +28,20 @@ import java.util.regex.Pattern
 class MigrationVersion : Comparable<MigrationVersion?> {
 
     /**
-     * The version in one of the following formats: 6, 6.0, 005, 1.2.3.4, 201004200021.
-     * {@code null} means that this version refers to an empty schema.
+     * The version parts, in one of the following formats: 6, 6.0, 005, 1.2.3.4, 201004200021, without trailing zeroes.
+     * Empty means that this version refers to an empty schema.
      */
-    lateinit private var versionParts: List<BigInteger>
+    lateinit private var versionParts: LongArray
+
+    /**
+     * The version parts as big integers, only when one of them overflows a Long, `null` otherwise.
+     */
+    private var bigVersionParts: Array<BigInteger>? = null
 
     /**
      * The alternative text to display instead of the version number.
      */
-    lateinit private var displayText: String
+    private var displayText: String
 
     /**
      * Creates a Version using this version string.
@@ -46,7 +51,8 @@ class MigrationVersion : Comparable<MigrationVersion?> {
      */
     private constructor(version: String) {
         val normalizedVersion = version.replace('_', '.')
-        init(tokenize(normalizedVersion), normalizedVersion)
+        tokenize(normalizedVersion)
+        this.displayText = normalizedVersion
     }
 
     /**
@@ -56,9 +62,9 @@ class MigrationVersion : Comparable<MigrationVersion?> {
      *                    {@code null} means that this version refers to an empty schema.
      * @param displayText The alternative text to display instead of the version number.
      */
-    private constructor(version: BigInteger?, displayText: String) {
-        val versionParts = version?.let { listOf(it) }.orEmpty()
-        init(versionParts, displayText)
+    private constructor(version: Long?, displayText: String) {
+        this.versionParts = if (version != null) longArrayOf(version) else LongArray(0)
+        this.displayText = displayText
     }
 
     /** Migration version table name */
@@ -75,7 +81,7 @@ class MigrationVersion : Comparable<MigrationVersion?> {
         }
         private set(version) {
             val normalizedVersion = version!!.replace('_', '.')
-            this.versionParts = tokenize(normalizedVersion)
+            tokenize(normalizedVersion)
             this.displayText = normalizedVersion
         }
 
@@ -90,7 +96,7 @@ class MigrationVersion : Comparable<MigrationVersion?> {
      * @return The computed version instance hash value.
      */
     override fun hashCode(): Int {
-        return versionParts.hashCode()
+        return bigVersionParts?.let { Arrays.hashCode(it) } ?: Arrays.hashCode(versionParts)
     }
 
     /**
@@ -117,13 +123,6 @@ class MigrationVersion : Comparable<MigrationVersion?> {
      */
     override fun compareTo(other: MigrationVersion?): Int {
 
-        /**
-         * @return Element value at given index or zero.
-         */
-        fun getOrZero(elements: List<BigInteger>, i: Int): BigInteger {
-            return if (i < elements.size) elements[i] else BigInteger.ZERO
-        }
-
         // Guard clauses, early return
         when {
             other == null     -> return 1
@@ -135,13 +134,50 @@ class MigrationVersion : Comparable<MigrationVersion?> {
             other === LATEST  -> return Integer.MIN_VALUE
         }
 
+        // Compare the version parts as big integers only when either version overflows a Long
+        if (bigVersionParts != null || other!!.bigVersionParts != null) {
+            return compareBigVersionParts(other!!)
+        }
+
         val elements1 = versionParts
-        val elements2 = other?.versionParts
-        val largestNumberOfElements = Math.max(elements1.size, elements2!!.size)
+        val elements2 = other.versionParts
+        val largestNumberOfElements = Math.max(elements1.size, elements2.size)
 
         // Iterate through the version parts to compare version numbers
         for (i in 0..largestNumberOfElements - 1) {
-            val compared = getOrZero(elements1, i).compareTo(getOrZero(elements2, i))
+            val part1 = if (i < elements1.size) elements1[i] else 0L
+            val part2 = if (i < elements2.size) elements2[i] else 0L
+            if (part1 != part2) {
+                return if (part1 < part2) -1 else 1
+            }
+        }
+
+        return 0
+    }
+
+    /**
+     * Compares the version parts of this version and the other one as big integers.
+     *
+     * @param other The other version.
+     * @return The comparison result.
+     */
+    private fun compareBigVersionParts(other: MigrationVersion): Int {
+
+        /**
+         * @return Version part at given index as a big integer, or zero.
+         */
+        fun getOrZero(version: MigrationVersion, i: Int): BigInteger {
+            val bigParts = version.bigVersionParts
+            return when {
+                bigParts != null              -> if (i < bigParts.size) bigParts[i] else BigInteger.ZERO
+                i < version.versionParts.size -> BigInteger.valueOf(version.versionParts[i])
+                else                          -> BigInteger.ZERO
+            }
+        }
+
+        val largestNumberOfElements = Math.max(partCount(), other.partCount())
+        for (i in 0..largestNumberOfElements - 1) {
+            val compared = getOrZero(this, i).compareTo(getOrZero(other, i))
             if (compared != 0) {
                 return compared
             }
@@ -151,41 +187,74 @@ class MigrationVersion : Comparable<MigrationVersion?> {
     }
 
     /**
-     * Class initialisation helper.
-     *
-     * @param versionParts The migration version parts.
-     * @param displayText
+     * @return The number of version parts.
      */
-    private fun init(versionParts: List<BigInteger>, displayText: String) {
-        this.versionParts = versionParts
-        this.displayText = displayText
+    private fun partCount(): Int {
+        return bigVersionParts?.size ?: versionParts.size
     }
 
     /**
-     * Splits this string into list of Long.
+     * Parses this string into the version parts, without trailing zeroes (except the first part). The parts are kept as
+     * Long, unless one of them overflows it.
      *
-     * @param str The string to split.
-     * @return The resulting array.
-     * @throws NumberFormatException when input string contains invalid characters.
+     * @param str The string to parse, made of numbers separated by dots (the first one may be signed).
+     * @throws CassandraMigrationException when input string contains invalid characters.
      */
-    @Throws(NumberFormatException::class)
-    private fun tokenize(str: String): List<BigInteger> {
-        val numbers = ArrayList(splitPattern.split(str).map { x ->
-            try {
-                BigInteger(x)
-            } catch (e: NumberFormatException) {
-                throw CassandraMigrationException("Invalid version containing non-numeric characters. Only 0..9 and . are allowed. Invalid version: $str")
+    @Throws(CassandraMigrationException::class)
+    private fun tokenize(str: String) {
+
+        /**
+         * @return The exception for the invalid version.
+         */
+        fun invalidVersion(): CassandraMigrationException {
+            return CassandraMigrationException("Invalid version containing non-numeric characters. Only 0..9 and . are allowed. Invalid version: $str")
+        }
+
+        /**
+         * @return {@code true} if the character at given index is a digit.
+         */
+        fun isDigitAt(i: Int): Boolean {
+            return i < str.length && str[i] >= '0' && str[i] <= '9'
+        }
+
+        val starts = ArrayList<Int>()
+        val ends = ArrayList<Int>()
+        var overflow = false
+        var i = 0
+        while (true) {
+            val start = i
+            if (start == 0 && i < str.length && (str[i] == '+' || str[i] == '-')) i++
+            if (!isDigitAt(i)) throw invalidVersion()
+
+            val digitsStart = i
+            while (isDigitAt(i)) i++
+
+            // Up to 18 digits always fit in a Long, beyond that check for overflow with leading zeroes skipped
+            if (i - digitsStart > MAX_LONG_DIGITS) {
+                var significant = digitsStart
+                while (significant < i - 1 && str[significant] == '0') significant++
+                if (i - significant > MAX_LONG_DIGITS) {
+                    overflow = overflow || BigInteger(str.substring(start, i)).bitLength() >= 64
+                }
             }
-        })
+            starts.add(start)
+            ends.add(i)
 
-        // TODO: Refactor to functional loop
-        // NOTE: Currently there's no idiomatic way to break out of a loop in Kotlin
-        for (i in numbers.size - 1 downTo 1) {
-            if (numbers[i] != BigInteger.ZERO) break
-            numbers.removeAt(i)
+            if (i == str.length) break
+            if (str[i] != '.' || !isDigitAt(i + 1)) throw invalidVersion()
+            i++
         }
 
-        return numbers
+        // Strip trailing zeroes, except for the first part
+        var count = starts.size
+        while (count > 1 && isZero(str, starts[count - 1], ends[count - 1])) count--
+
+        if (overflow) {
+            this.versionParts = LongArray(0)
+            this.bigVersionParts = Array(count) { BigInteger(str.substring(starts[it], ends[it])) }
+        } else {
+            this.versionParts = LongArray(count) { parseLong(str, starts[it], ends[it]) }
+        }
     }
 
     /**
@@ -197,13 +266,49 @@ class MigrationVersion : Comparable<MigrationVersion?> {
         val EMPTY = MigrationVersion(null, "<< Empty Schema >>")
 
         /** Latest version. */
-        val LATEST = MigrationVersion(BigInteger.valueOf(-1), "<< Latest Version >>")
+        val LATEST = MigrationVersion(-1L, "<< Latest Version >>")
 
         /** Current version. Only a marker. For the real version use CassandraMigration.info().current() instead. */
-        val CURRENT = MigrationVersion(BigInteger.valueOf(-2), "<< Current Version >>")
+        val CURRENT = MigrationVersion(-2L, "<< Current Version >>")
+
+        /** The maximum number of digits always fitting in a Long. */
+        private val MAX_LONG_DIGITS = 18
+
+        /** The maximum number of canonical versions interned by `fromVersion`. */
+        private val MAX_INTERNED_VERSIONS = 10000
+
+        /** The canonical versions created by `fromVersion`, by version string. */
+        private val internedVersions = ConcurrentHashMap<String, MigrationVersion>()
+
+        /**
+         * Checks whether this number is zero.
+         *
+         * @param str The string containing the number.
+         * @param start The start index of the number, inclusive.
+         * @param end The end index of the number, exclusive.
+         * @return {@code true} if the number is zero.
+         */
+        private fun isZero(str: String, start: Int, end: Int): Boolean {
+            return (start..end - 1).all { str[it] == '0' }
+        }
 
-        /** Compiled pattern for matching proper version format. */
-        private val splitPattern = Pattern.compile("\\.(?=\\d)")
+        /**
+         * Parses this number, known to fit in a Long.
+         *
+         * @param str The string containing the number.
+         * @param start The start index of the (possibly signed) number, inclusive.
+         * @param end The end index of the number, exclusive.
+         * @return The number.
+         */
+        private fun parseLong(str: String, start: Int, end: Int): Long {
+            val negative = str[start] == '-'
+            var value = 0L
+            for (i in (if (str[start] == '+' || negative) start + 1 else start)..end - 1) {
+                // Accumulate negatively, so that Long.MIN_VALUE does not overflow
+                value = value * 10 - (str[i] - '0')
+            }
+            return if (negative) value else -value
+        }
 
         /**
          * Factory for creating a MigrationVersion from a version String.
@@ -233,10 +338,28 @@ class MigrationVersion : Comparable<MigrationVersion?> {
                 isCurrent()               -> CURRENT
                 isLatest()                -> LATEST
                 LATEST.version == version -> LATEST
-                else                      -> MigrationVersion(version)
+                else                      -> intern(version)
             }
         }
 
+        /**
+         * Retrieves the canonical version for this version String, so that repeated lookups of the same version (e.g.
+         * for each row of the migration version table) return the same instance. Beyond the interned versions limit,
+         * new versions are created but no longer interned.
+         *
+         * @param version The version String.
+         * @return The MigrationVersion.
+         * @throws CassandraMigrationException when the version String contains invalid characters.
+         */
+        private fun intern(version: String): MigrationVersion {
+            internedVersions[version]?.let { return it }
+
+            val migrationVersion = MigrationVersion(version)
+            if (internedVersions.size >= MAX_INTERNED_VERSIONS) return migrationVersion
+
+            return internedVersions.putIfAbsent(version, migrationVersion) ?: migrationVersion
+        }
+
     }
 
 }
@@ -19,15 +19,16 @@
 package com.hhandoko.cassandra.migration.api.configuration
 
 import com.hhandoko.cassandra.migration.internal.util.StringUtils
-import com.typesafe.config.ConfigFactory
 import io.github.config4k.extract
 import java.nio.file.Path
 import java.nio.file.Paths
 
 /**
  * Cluster configuration.
+ *
+ * @param snapshot The configuration snapshot to initialize the cluster configuration from.
  */
-class ClusterConfiguration {
+class ClusterConfiguration(snapshot: ConfigurationSnapshot = ConfigurationSnapshot.current()) {
 
     /**
      * Cluster node IP address(es).
@@ -89,8 +90,7 @@ class ClusterConfiguration {
      * ClusterConfiguration initialization.
      */
     init {
-        ConfigFactory.invalidateCaches()
-        ConfigFactory.load().let {
+        snapshot.config.let {
             it.extract<String?>(ConfigurationProperty.CONTACT_POINTS.namespace)?.let {
                 this.contactpoints = StringUtils.tokenizeToStringArray(it, ",")
             }
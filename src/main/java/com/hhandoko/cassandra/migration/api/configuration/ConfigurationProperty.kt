@@ -43,6 +43,41 @@ enum class ConfigurationProperty(val namespace: String, val description: String)
             "CQL scripts timeout in seconds"
     ),
 
+    SCRIPTS_ASYNC_WINDOW(
+            "cassandra.migration.scripts.async_window",
+            "Maximum number of DML statements in flight per CQL script, 1 to execute statements one at a time"
+    ),
+
+    SCHEMA_AGREEMENT_BACKOFF(
+            "cassandra.migration.scripts.schema_agreement_backoff",
+            "Initial delay between schema agreement checks after schema changes in milliseconds"
+    ),
+
+    SCHEMA_AGREEMENT_DEADLINE(
+            "cassandra.migration.scripts.schema_agreement_deadline",
+            "Maximum time to wait for schema agreement after schema changes in seconds"
+    ),
+
+    SCRIPTS_STATEMENT_CACHE_DIR(
+            "cassandra.migration.scripts.statement_cache_dir",
+            "Directory of the parsed CQL scripts statements cache, shared by all runs"
+    ),
+
+    SCRIPTS_STATEMENT_CACHE_SIZE(
+            "cassandra.migration.scripts.statement_cache_size",
+            "Maximum number of CQL scripts in the parsed statements cache"
+    ),
+
+    SCRIPTS_CONTENT_BUDGET(
+            "cassandra.migration.scripts.content_budget",
+            "Maximum number of bytes of CQL scripts retained in memory between checksum calculation and execution"
+    ),
+
+    SCRIPTS_RESOLVE_PARALLELISM(
+            "cassandra.migration.scripts.resolve_parallelism",
+            "Number of locations resolved and of migration checksums computed concurrently"
+    ),
+
     ALLOW_OUT_OF_ORDER(
             "cassandra.migration.scripts.allowoutoforder",
             "Allow out of order migration"
@@ -55,6 +90,16 @@ enum class ConfigurationProperty(val namespace: String, val description: String)
             "Prefix to be prepended to cassandra_migration_version* table names"
     ),
 
+    TABLE_RANK_ALLOCATION(
+            "cassandra.migration.table.rank_allocation",
+            "Installed rank allocation strategy for the migration version table, either COUNTER or CONDITIONAL"
+    ),
+
+    TABLE_ASYNC_WRITES(
+            "cassandra.migration.table.async_writes",
+            "Record successful migrations in the migration version table asynchronously"
+    ),
+
     // Baseline version configuration properties
     // ~~~~~~
     BASELINE_VERSION(
@@ -0,0 +1,97 @@
+/**
+ * File     : ConfigurationSnapshot.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.api.configuration
+
+import com.typesafe.config.Config
+import com.typesafe.config.ConfigFactory
+
+/**
+ * Resolved, immutable snapshot of the Cassandra migration configuration (`reference.conf`, `application.conf` and
+ * System properties), loaded once and shared by the `CassandraMigration`, `KeyspaceConfiguration` and
+ * `ClusterConfiguration` instances created from it.
+ *
+ * The current snapshot is loaded again when the configuration System properties (`cassandra.migration.*` and
+ * `config.*`) change, other configuration changes (e.g. to `application.conf`) are only taken into account on `reload`.
+ *
+ * @param config The resolved configuration.
+ * @param systemProperties The configuration System properties the configuration was resolved with.
+ */
+class ConfigurationSnapshot private constructor(
+    val config: Config,
+    private val systemProperties: Map<String, String>
+) {
+
+    /**
+     * ConfigurationSnapshot companion object.
+     */
+    companion object {
+
+        /** The prefixes of the System properties the configuration is resolved with. */
+        private val SYSTEM_PROPERTY_PREFIXES = arrayOf("cassandra.migration.", "config.")
+
+        /** The current configuration snapshot, `null` until loaded. */
+        @Volatile
+        private var current: ConfigurationSnapshot? = null
+
+        /**
+         * Retrieves the current configuration snapshot, loading it only if not loaded yet or if the configuration
+         * System properties changed since it was loaded.
+         *
+         * @return The current configuration snapshot.
+         */
+        @JvmStatic
+        fun current(): ConfigurationSnapshot {
+            val snapshot = current
+            if (snapshot != null && snapshot.systemProperties == systemProperties()) {
+                return snapshot
+            }
+            return reload()
+        }
+
+        /**
+         * Loads the configuration again, e.g. after `application.conf` changed, and makes it the current snapshot.
+         * The instances created from the previous snapshot are not affected.
+         *
+         * @return The new current configuration snapshot.
+         */
+        @JvmStatic
+        @Synchronized
+        fun reload(): ConfigurationSnapshot {
+            val properties = systemProperties()
+
+            ConfigFactory.invalidateCaches()
+            val snapshot = ConfigurationSnapshot(ConfigFactory.load(), properties)
+            current = snapshot
+            return snapshot
+        }
+
+        /**
+         * Collects the configuration System properties.
+         *
+         * @return The configuration System properties, by name.
+         */
+        private fun systemProperties(): Map<String, String> {
+            val properties = System.getProperties()
+            return properties.stringPropertyNames()
+                    .filter { name -> SYSTEM_PROPERTY_PREFIXES.any { name.startsWith(it) } }
+                    .associate { it to properties.getProperty(it) }
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * File     : InstalledRankAllocation.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.api.configuration
+
+/**
+ * Strategy to allocate the installed rank of migrations recorded in the schema migration version table.
+ *
+ * All clients recording migrations into the same schema migration version table should use the same strategy.
+ */
+enum class InstalledRankAllocation {
+
+    /** Increments and reads back the `installed_rank` counter in the `*_counts` table. */
+    COUNTER,
+
+    /**
+     * Claims the installed rank following the applied migrations already loaded in the `*_ranks` table, and then the
+     * version record, each with a lightweight transaction (`INSERT ... IF NOT EXISTS`), making the record safe to
+     * retry. An installed rank already claimed by a concurrent migration run is skipped, and a failed record of the
+     * same version is replaced.
+     */
+    CONDITIONAL
+
+}
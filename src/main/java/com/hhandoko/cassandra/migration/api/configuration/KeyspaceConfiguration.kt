@@ -19,18 +19,19 @@
 package com.hhandoko.cassandra.migration.api.configuration
 
 import com.datastax.driver.core.ConsistencyLevel
-import com.typesafe.config.ConfigFactory
 import io.github.config4k.extract
 
 /**
  * Keyspace configuration.
+ *
+ * @param snapshot The configuration snapshot to initialize the keyspace configuration from.
  */
-class KeyspaceConfiguration {
+class KeyspaceConfiguration(snapshot: ConfigurationSnapshot = ConfigurationSnapshot.current()) {
 
     /**
      * Cluster configuration.
      */
-    var clusterConfig: ClusterConfiguration = ClusterConfiguration()
+    var clusterConfig: ClusterConfiguration = ClusterConfiguration(snapshot)
 
     /**
      * Cassandra keyspace name.
@@ -48,8 +49,7 @@ class KeyspaceConfiguration {
      * KeyspaceConfiguration initialization.
      */
     init {
-        ConfigFactory.invalidateCaches()
-        ConfigFactory.load().let {
+        snapshot.config.let {
             it.extract<String?>(ConfigurationProperty.KEYSPACE_NAME.namespace)?.let {
                 this.name = it.trim()
             }
@@ -21,13 +21,17 @@ package com.hhandoko.cassandra.migration.internal.command
 import com.datastax.driver.core.Session
 import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.MigrationInfo
+import com.hhandoko.cassandra.migration.api.MigrationInfoService
 import com.hhandoko.cassandra.migration.api.MigrationState
+import com.hhandoko.cassandra.migration.api.MigrationType
 import com.hhandoko.cassandra.migration.api.MigrationVersion
 import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
 import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
 import com.hhandoko.cassandra.migration.internal.info.MigrationInfoImpl
-import com.hhandoko.cassandra.migration.internal.info.MigrationInfoServiceImpl
+import com.hhandoko.cassandra.migration.internal.info.MigrationPlanner
 import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
+import com.hhandoko.cassandra.migration.internal.util.ExceptionUtils
 import com.hhandoko.cassandra.migration.internal.util.StopWatch
 import com.hhandoko.cassandra.migration.internal.util.TimeFormat
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
@@ -41,6 +45,8 @@ import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
  * @param session The Cassandra session connection to use to execute the migration.
  * @param user The user to execute the migration as.
  * @param allowOutOfOrder True to allow migration to be run "out of order".
+ * @param asyncTableWrites True to record successful migrations asynchronously, overlapped with the next migration.
+ * @param schemaAgreement The schema agreement barrier to wait on after schema changes.
  */
 class Migrate(
     private val migrationResolver: MigrationResolver,
@@ -48,7 +54,9 @@ class Migrate(
     private val schemaVersionDAO: SchemaVersionDAO,
     private val session: Session,
     private val user: String,
-    private val allowOutOfOrder: Boolean
+    private val allowOutOfOrder: Boolean,
+    private val asyncTableWrites: Boolean = false,
+    private val schemaAgreement: SchemaAgreement? = null
 ) {
 
     /** Keyspace name lensing */
@@ -65,91 +73,105 @@ class Migrate(
         val stopWatch = StopWatch()
         stopWatch.start()
 
-        var migrationSuccessCount = 0
-        while (true) {
-            val infoService = MigrationInfoServiceImpl(migrationResolver, schemaVersionDAO, migrationTarget, allowOutOfOrder, true)
-            infoService.refresh()
-
-            // Initialise `firstRun` and `currentSchemaVersion` variables
-            val firstRun = migrationSuccessCount == 0
-            val currentSchemaVersion = infoService.current()?.version ?: MigrationVersion.CURRENT
-
-            // First run only
-            // ~~~~~
-            // Log first run message and warn the user if `out-of-order` is enabled
-            if (firstRun) {
-                LOG.info("Current version of keyspace $keyspaceName: $currentSchemaVersion")
-
-                if (allowOutOfOrder) {
-                    LOG.warn("'outOfOrder' mode is active. Migration of keyspace $keyspaceName may not be reproducible.")
-                }
-            }
+        val planner = MigrationPlanner(migrationResolver, schemaVersionDAO, migrationTarget, allowOutOfOrder)
+        planner.refresh()
 
-            // Future migrations
-            // ~~~~~
-            // Log future migrations and warn users if there are no resolved migrations, or
-            // if there current version migration is newer than what is available
-            val future = infoService.future()
-            if (future.isNotEmpty()) {
-                val resolvedLogMsg = "Keyspace $keyspaceName has version $currentSchemaVersion"
-                val resolved = infoService.resolved()
-                if (resolved.size == 0) {
-                    LOG.warn("$resolvedLogMsg, but no migration could be resolved in the configured locations!")
-                } else {
-                    val latestVersion = resolved[resolved.size - 1].version
-                    LOG.warn("$resolvedLogMsg that is newer than the latest available migration ($latestVersion)!")
-                }
-            }
+        // Log first run message and warn the user if `out-of-order` is enabled
+        LOG.info("Current version of keyspace $keyspaceName: ${planner.currentVersion}")
+        if (allowOutOfOrder) {
+            LOG.warn("'outOfOrder' mode is active. Migration of keyspace $keyspaceName may not be reproducible.")
+        }
 
-            // Failed migrations
-            // ~~~~~
-            // Log failed future migrations and throw `CassandraMigrationException` for everything else
-            val failed = infoService.failed()
-            if (failed.isNotEmpty()) {
-                val isFutureFailed = failed[0].state === MigrationState.FUTURE_FAILED
-                val failedVersion = failed[0].version
-                if (failed.size == 1 && isFutureFailed) {
-                    val failedLogMsg = "Keyspace $keyspaceName contains a failed future migration to version $failedVersion!"
-                    LOG.warn(failedLogMsg)
-                } else {
-                    val failedLogMsg = "Keyspace $keyspaceName contains a failed migration to version $failedVersion!"
-                    throw CassandraMigrationException(failedLogMsg)
-                }
-            }
+        checkAppliedMigrations(planner.info, planner.currentVersion)
+
+        // Pending migrations
+        // ~~~~~
+        // Apply pending migrations, in the order planned up front
+        var migrationSuccessCount = 0
+        try {
+            while (true) {
+                val migration = planner.nextPending ?: break
+                val isOutOfOrder = migration.version.compareTo(planner.currentVersion) < 0
+                val appliedMigration = applyMigration(migration, isOutOfOrder)
+                migrationSuccessCount++
 
-            // Pending migrations
-            // ~~~~~
-            // Apply pending migrations
-            val pendingMigrations = infoService.pending()
-            if (pendingMigrations.isNotEmpty()) {
-                if (pendingMigrations[0] is MigrationInfoImpl) {
-                    val isOutOfOrder = pendingMigrations[0].version.compareTo(currentSchemaVersion) < 0
-                    applyMigration(pendingMigrations[0] as MigrationInfoImpl, isOutOfOrder) ?: break
+                // Re-check the applied migrations if the plan has been re-read due to a concurrent writer
+                if (planner.recordApplied(appliedMigration)) {
+                    checkAppliedMigrations(planner.info, planner.currentVersion)
                 }
-            } else {
-                // Exit if there are no more pending migrations
-                break
             }
-
-            migrationSuccessCount++
+        } catch (e: Exception) {
+            // Wait for any asynchronous migration records to be written, without masking the migration failure
+            try {
+                schemaVersionDAO.flushAppliedMigrations()
+            } catch (flushException: Exception) {
+                ExceptionUtils.addSuppressed(e, flushException)
+            }
+            throw e
         }
 
+        // Wait for any asynchronous migration records to be written
+        schemaVersionDAO.flushAppliedMigrations()
+
         stopWatch.stop()
         logSummary(migrationSuccessCount, stopWatch.totalTimeMillis)
 
         return migrationSuccessCount
     }
 
+    /**
+     * Checks the applied migrations, warning about future migrations and failing on failed migrations.
+     *
+     * @param infoService The migration info service.
+     * @param currentSchemaVersion The current schema version.
+     * @throws CassandraMigrationException when the keyspace contains a failed migration.
+     */
+    @Throws(CassandraMigrationException::class)
+    private fun checkAppliedMigrations(infoService: MigrationInfoService, currentSchemaVersion: MigrationVersion) {
+
+        // Future migrations
+        // ~~~~~
+        // Log future migrations and warn users if there are no resolved migrations, or
+        // if there current version migration is newer than what is available
+        val future = infoService.future()
+        if (future.isNotEmpty()) {
+            val resolvedLogMsg = "Keyspace $keyspaceName has version $currentSchemaVersion"
+            val resolved = infoService.resolved()
+            if (resolved.size == 0) {
+                LOG.warn("$resolvedLogMsg, but no migration could be resolved in the configured locations!")
+            } else {
+                val latestVersion = resolved[resolved.size - 1].version
+                LOG.warn("$resolvedLogMsg that is newer than the latest available migration ($latestVersion)!")
+            }
+        }
+
+        // Failed migrations
+        // ~~~~~
+        // Log failed future migrations and throw `CassandraMigrationException` for everything else
+        val failed = infoService.failed()
+        if (failed.isNotEmpty()) {
+            val isFutureFailed = failed[0].state === MigrationState.FUTURE_FAILED
+            val failedVersion = failed[0].version
+            if (failed.size == 1 && isFutureFailed) {
+                val failedLogMsg = "Keyspace $keyspaceName contains a failed future migration to version $failedVersion!"
+                LOG.warn(failedLogMsg)
+            } else {
+                val failedLogMsg = "Keyspace $keyspaceName contains a failed migration to version $failedVersion!"
+                throw CassandraMigrationException(failedLogMsg)
+            }
+        }
+    }
+
     /**
      * Applies this migration to the database. The migration state and the execution time are updated accordingly.
      *
      * @param migration The migration to apply.
      * @param isOutOfOrder If this migration is being applied out of order.
-     * @return The result of the migration.
+     * @return The applied migration, as recorded in the schema version table.
      * @throws CassandraMigrationException when migration cannot be applied.
      */
     @Throws(CassandraMigrationException::class)
-    private fun applyMigration(migration: MigrationInfoImpl, isOutOfOrder: Boolean): MigrationVersion? {
+    private fun applyMigration(migration: MigrationInfoImpl, isOutOfOrder: Boolean): AppliedMigration {
 
         /**
          * Add applied migration into the Cassandra migration versioning table.
@@ -158,20 +180,46 @@ class Migrate(
          * @param migration The migration to apply.
          * @param executionTime The total time taken to perform this migration run (in ms).
          * @param success True to denote successful migration application.
+         * @return The applied migration, as recorded in the schema version table.
          */
-        fun addAppliedMigration(version: MigrationVersion, migration: MigrationInfo, executionTime: Long, success: Boolean = true) {
-            schemaVersionDAO.addAppliedMigration(
-                AppliedMigration(
-                    version,
-                    migration.description,
-                    migration.type,
-                    migration.script,
-                    migration.checksum,
-                    user,
-                    executionTime.toInt(),
-                    success
-                )
+        fun addAppliedMigration(version: MigrationVersion, migration: MigrationInfo, executionTime: Long, success: Boolean = true): AppliedMigration {
+            val appliedMigration = AppliedMigration(
+                version,
+                migration.description,
+                migration.type,
+                migration.script,
+                migration.checksum,
+                user,
+                executionTime.toInt(),
+                success
             )
+
+            if (success) {
+                if (asyncTableWrites) {
+                    return schemaVersionDAO.addAppliedMigrationAsync(appliedMigration)
+                }
+                schemaVersionDAO.flushAppliedMigrations()
+                return schemaVersionDAO.addAppliedMigration(appliedMigration)
+            }
+
+            // NOTE: Failures are always recorded synchronously, after any pending asynchronous records, even when one of
+            //       them could not be written
+            val flushException = try {
+                schemaVersionDAO.flushAppliedMigrations()
+                null
+            } catch (e: Exception) {
+                e
+            }
+
+            val failedMigration = try {
+                schemaVersionDAO.addAppliedMigration(appliedMigration)
+            } catch (e: Exception) {
+                flushException?.let { ExceptionUtils.addSuppressed(e, it) }
+                throw e
+            }
+            if (flushException != null) throw flushException
+
+            return failedMigration
         }
 
         val version = migration.version
@@ -183,21 +231,38 @@ class Migrate(
         val stopWatch = StopWatch()
         stopWatch.start()
 
-        var isMigrationSuccess = false
         try {
+            val schemaAgreementWaitStart = schemaAgreement?.waitMillis ?: 0L
+
             val executor = migration.resolvedMigration!!.executor!!
             executor.execute(session)
-            isMigrationSuccess = true
+
+            // NOTE: CQL migrations wait for schema agreement after each schema change, other migrations once completed
+            if (migration.type != MigrationType.CQL) {
+                schemaAgreement?.await(session)
+            }
             LOG.debug("$logMsg success!")
+
+            val schemaAgreementWait = (schemaAgreement?.waitMillis ?: 0L) - schemaAgreementWaitStart
+            if (schemaAgreementWait > 0) {
+                LOG.info("$logMsg waited ${TimeFormat.format(schemaAgreementWait)} for schema agreement")
+            }
         } catch (e: Exception) {
             LOG.error("$logMsg failed! Please restore backups and roll back database and code!")
-            throw CassandraMigrationException("Unable to apply migration", e)
-        } finally {
+            val migrationException = CassandraMigrationException("Unable to apply migration", e)
+
+            // Record the failed migration, without masking the migration failure
             stopWatch.stop()
-            addAppliedMigration(version, migration, stopWatch.totalTimeMillis, isMigrationSuccess)
+            try {
+                addAppliedMigration(version, migration, stopWatch.totalTimeMillis, success = false)
+            } catch (recordException: Exception) {
+                ExceptionUtils.addSuppressed(migrationException, recordException)
+            }
+            throw migrationException
         }
 
-        return version
+        stopWatch.stop()
+        return addAppliedMigration(version, migration, stopWatch.totalTimeMillis)
     }
 
     /**
@@ -18,13 +18,20 @@
  */
 package com.hhandoko.cassandra.migration.internal.command
 
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.MigrationVersion
 import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
+import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
 import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
+import com.hhandoko.cassandra.migration.internal.info.MigrationInfoImpl
 import com.hhandoko.cassandra.migration.internal.info.MigrationInfoServiceImpl
+import com.hhandoko.cassandra.migration.internal.resolver.cql.CqlMigrationExecutor
 import com.hhandoko.cassandra.migration.internal.util.StopWatch
 import com.hhandoko.cassandra.migration.internal.util.TimeFormat
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 /**
  * Handles the validate command.
@@ -35,13 +42,15 @@ import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
  * @param schemaVersionDAO The Cassandra migration schema version DAO.
  * @param outOfOrder True to allow migration to be run "out of order".
  * @param pendingOrFuture True to allow pending or Future<T> migration to be run.
+ * @param parallelism The number of migration checksums computed concurrently, 1 to compute them one at a time.
  */
 class Validate(
     private val migrationResolver: MigrationResolver,
     private val migrationTarget: MigrationVersion,
     private val schemaVersionDAO: SchemaVersionDAO,
     private val outOfOrder: Boolean,
-    private val pendingOrFuture: Boolean
+    private val pendingOrFuture: Boolean,
+    private val parallelism: Int = 1
 ) {
 
     /**
@@ -56,7 +65,18 @@ class Validate(
         val infoService = MigrationInfoServiceImpl(migrationResolver, schemaVersionDAO, migrationTarget, outOfOrder, pendingOrFuture)
         infoService.refresh()
         val count = infoService.all().size
-        val validationError = infoService.validate()
+
+        // Compute the (lazy) checksums of the applied migrations that are compared, concurrently if enabled
+        val appliedResolvedMigrations = infoService.all()
+                .map { it as MigrationInfoImpl }
+                .filter { it.appliedMigration != null }
+                .mapNotNull { it.resolvedMigration }
+        val validationError = try {
+            computeChecksums(appliedResolvedMigrations)
+            infoService.validate()
+        } finally {
+            releaseContents(appliedResolvedMigrations)
+        }
 
         stopWatch.stop()
 
@@ -65,6 +85,42 @@ class Validate(
         return validationError
     }
 
+    /**
+     * Computes the checksums of these migrations concurrently, if enabled. The checksums are otherwise computed one at a
+     * time, as they are validated.
+     *
+     * @param migrations The migrations to compute the checksum of.
+     * @throws CassandraMigrationException when any of the checksums cannot be computed.
+     */
+    private fun computeChecksums(migrations: List<ResolvedMigration>) {
+        // GUARD: Compute one at a time
+        if (parallelism <= 1 || migrations.size <= 1) return
+
+        val executor = Executors.newFixedThreadPool(Math.min(parallelism, migrations.size))
+        try {
+            migrations.map { migration -> executor.submit(Callable { migration.checksum }) }
+                    .forEach { it.get() }
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            throw cause as? CassandraMigrationException ?: CassandraMigrationException("Unable to compute migration checksums", e)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw CassandraMigrationException("Interrupted while computing migration checksums", e)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Releases the content retained from the checksum calculation of these migrations from the content budget, as
+     * applied migrations are not executed again.
+     *
+     * @param migrations The migrations to release the content of.
+     */
+    private fun releaseContents(migrations: List<ResolvedMigration>) {
+        migrations.forEach { (it.executor as? CqlMigrationExecutor)?.releaseContent() }
+    }
+
     /**
      * Logs the summary of this migration run.
      *
@@ -0,0 +1,106 @@
+/**
+ * File     : AppliedMigrationLedger.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
+import java.util.*
+
+/**
+ * In-memory ledger of the applied migrations recorded in the schema version table.
+ *
+ * The ledger is loaded from the schema version table once, and is kept up to date as new migrations are recorded
+ * (written through to Cassandra by the SchemaVersionDAO). Versions are kept in a sorted index, so that version rank
+ * lookups are binary searches rather than full table scans.
+ *
+ * @param appliedMigrations The applied migrations read from the schema version table.
+ */
+internal class AppliedMigrationLedger(appliedMigrations: Collection<AppliedMigration>) {
+
+    /**
+     * The applied migrations, in the order they were loaded or recorded.
+     */
+    private val migrations = ArrayList<AppliedMigration>(appliedMigrations)
+
+    /**
+     * The applied migration versions, in ascending order.
+     */
+    private val versions = ArrayList<MigrationVersion>(appliedMigrations.size)
+
+    /**
+     * The highest installed rank amongst the applied migrations.
+     */
+    private var maxInstalledRank = 0
+
+    /**
+     * AppliedMigrationLedger initialization.
+     */
+    init {
+        appliedMigrations.forEach {
+            versions.add(it.version!!)
+            maxInstalledRank = Math.max(maxInstalledRank, it.installedRank ?: 0)
+        }
+        Collections.sort(versions)
+    }
+
+    /**
+     * The applied migrations, in the order they were loaded or recorded.
+     */
+    val appliedMigrations: List<AppliedMigration>
+        get() = Collections.unmodifiableList(migrations)
+
+    /**
+     * Calculates the rank for the given version about to be recorded, i.e. its position amongst all recorded versions
+     * (1-based), after any version lower than or equal to it.
+     *
+     * @param version The version to calculate the rank for.
+     * @return The version rank.
+     */
+    fun versionRank(version: MigrationVersion): Int {
+        val index = Collections.binarySearch(versions, version)
+        return if (index >= 0) index + 2 else -index
+    }
+
+    /**
+     * Calculates the installed rank for the next migration about to be recorded, i.e. the one following the highest
+     * installed rank recorded so far.
+     *
+     * @return The installed rank.
+     */
+    fun nextInstalledRank(): Int {
+        return maxInstalledRank + 1
+    }
+
+    /**
+     * Records the given applied migration, replacing any previous record of the same version.
+     *
+     * @param appliedMigration The applied migration.
+     */
+    fun add(appliedMigration: AppliedMigration) {
+        val version = appliedMigration.version!!
+        val index = Collections.binarySearch(versions, version)
+        if (index >= 0) {
+            migrations.removeAll { it.version == version }
+        } else {
+            versions.add(-(index + 1), version)
+        }
+        migrations.add(appliedMigration)
+        maxInstalledRank = Math.max(maxInstalledRank, appliedMigration.installedRank ?: 0)
+    }
+
+}
@@ -18,12 +18,17 @@
  */
 package com.hhandoko.cassandra.migration.internal.dbsupport
 
+import com.datastax.driver.core.ResultSetFuture
 import com.datastax.driver.core.Session
 import com.datastax.driver.core.SimpleStatement
+import com.datastax.driver.core.Statement
 import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache.StatementBounds
 import com.hhandoko.cassandra.migration.internal.util.StringUtils
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
 import com.hhandoko.cassandra.migration.internal.util.scanner.Resource
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent.Fingerprint
 import java.io.BufferedReader
 import java.io.IOException
 import java.io.Reader
@@ -33,13 +38,17 @@ import java.util.*
 /**
  * CQL script containing a series of statements terminated by a delimiter (eg: ;).
  * Single-line (--) and multi-line (/ ** * /) comments are stripped and ignored.
+ *
+ * The script source is parsed as a stream, statements are read one at a time as the script is executed, so that only
+ * the statements being executed are held in memory rather than the whole script.
  */
 class CqlScript {
 
     /**
-     * The CQL statements contained in this script.
+     * Opens a new reader over the script source.
      */
-    val cqlStatements: List<String>
+    private val openSource: () -> Reader
+
 
     /**
      * The resource containing the statements.
@@ -51,15 +60,41 @@ class CqlScript {
      */
     val timeout: Int
 
+    /**
+     * The maximum number of DML statements in flight when executing this script, 1 to execute all statements one at a
+     * time.
+     */
+    val asyncWindow: Int
+
+    /**
+     * The schema agreement barrier to wait on after each schema change, or `null` to not wait for schema agreement.
+     */
+    val schemaAgreement: SchemaAgreement?
+
+    /**
+     * The content of the script resource, whose fingerprint is used as the statement cache key.
+     */
+    private val content: ResourceContent?
+
+    /**
+     * The cache of parsed statement boundaries, or `null` to always parse the script source.
+     */
+    private val statementCache: CqlStatementCache?
+
     /**
      * Creates a new CQL script from this source.
      *
      * @param cqlScriptSource The cql script as a text block with all placeholders already replaced.
+     * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
      */
-    constructor(cqlScriptSource: String) {
-        this.cqlStatements = parse(cqlScriptSource)
+    constructor(cqlScriptSource: String, asyncWindow: Int = 1) {
+        this.openSource = { StringReader(cqlScriptSource) }
         this.resource = null
         this.timeout = 0
+        this.asyncWindow = asyncWindow
+        this.schemaAgreement = null
+        this.content = null
+        this.statementCache = null
     }
 
     /**
@@ -68,118 +103,390 @@ class CqlScript {
      * @param cqlScriptResource The resource containing the statements.
      * @param encoding The encoding to use.
      * @param timeout The script read timeout in seconds.
+     * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
+     * @param schemaAgreement The schema agreement barrier to wait on after each schema change.
+     * @param statementCache The cache of parsed statement boundaries, or `null` to always parse the resource.
+     */
+    constructor(
+        cqlScriptResource: Resource,
+        encoding: String,
+        timeout: Int,
+        asyncWindow: Int = 1,
+        schemaAgreement: SchemaAgreement? = null,
+        statementCache: CqlStatementCache? = null
+    ) : this(ResourceContent(cqlScriptResource, encoding), timeout, asyncWindow, schemaAgreement, statementCache)
+
+    /**
+     * Creates a new CQL script from this resource content, reading the retained content (if any) instead of the
+     * resource.
+     *
+     * @param cqlScriptContent The content of the resource containing the statements.
+     * @param timeout The script read timeout in seconds.
+     * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
+     * @param schemaAgreement The schema agreement barrier to wait on after each schema change.
+     * @param statementCache The cache of parsed statement boundaries (keyed by the content fingerprint), or `null` to
+     *                       always parse the resource.
      */
-    constructor(cqlScriptResource: Resource, encoding: String, timeout: Int) {
-        val cqlScriptSource = cqlScriptResource.loadAsString(encoding)
-        this.cqlStatements = parse(cqlScriptSource)
-        this.resource = cqlScriptResource
+    constructor(
+        cqlScriptContent: ResourceContent,
+        timeout: Int,
+        asyncWindow: Int = 1,
+        schemaAgreement: SchemaAgreement? = null,
+        statementCache: CqlStatementCache? = null
+    ) {
+        this.openSource = { cqlScriptContent.openReader() }
+        this.resource = cqlScriptContent.resource
         this.timeout = timeout * 1000 // Convert from seconds to milliseconds
+        this.asyncWindow = asyncWindow
+        this.schemaAgreement = schemaAgreement
+        this.content = cqlScriptContent
+        this.statementCache = statementCache
     }
 
     /**
      * Executes this script against the database.
      *
+     * DML statements are executed asynchronously, with at most `asyncWindow` statements in flight. Any other statement
+     * (e.g. DDL) is only executed once all in-flight statements have completed, and is completed before the next
+     * statement is executed. When a schema agreement barrier is set, the schema agreement is awaited after each of these
+     * statements if the driver did not confirm it.
+     *
      * @param session The Cassandra session connection to use to execute the migration.
+     * @throws CassandraMigrationException when any of the statements failed, reporting the first failed statement.
      */
     fun execute(session: Session) {
-        cqlStatements.forEach {
-            LOG.debug("Executing CQL: $it")
-            when {
-                timeout > 0 -> session.execute(SimpleStatement(it).setReadTimeoutMillis(timeout))
-                else        -> session.execute(it)
+        val inFlight = ArrayDeque<InFlightStatement>()
+
+        useStatements { statements ->
+            statements.forEachIndexed { index, cql ->
+                LOG.debug("Executing CQL: $cql")
+                val statement = createStatement(cql)
+
+                if (asyncWindow > 1 && isDml(cql)) {
+                    // Apply backpressure, waiting for the oldest statement once the window is full
+                    if (inFlight.size >= asyncWindow) {
+                        awaitStatement(inFlight.removeFirst(), inFlight)
+                    }
+                    inFlight.add(InFlightStatement(index, cql, session.executeAsync(statement)))
+                } else {
+                    drainStatements(inFlight)
+                    val resultSet = try {
+                        session.execute(statement)
+                    } catch (e: Exception) {
+                        throw statementFailure(index, cql, e)
+                    }
+                    schemaAgreement?.await(session, resultSet.executionInfo)
+                }
             }
         }
+
+        drainStatements(inFlight)
+    }
+
+    /**
+     * Parses this script's source into statements, read lazily as the sequence is iterated, and passes them to the
+     * given block. The script source is closed once the block completes.
+     *
+     * When the statement boundaries of this script are cached, the statements are extracted from the script source
+     * without parsing it. Otherwise the boundaries are cached once the whole script source has been parsed.
+     *
+     * @param block The block using the statements sequence, which can only be iterated once.
+     * @param T The block result type.
+     * @return The block result.
+     * @throws CassandraMigrationException when the script source cannot be read.
+     */
+    fun <T> useStatements(block: (Sequence<String>) -> T): T {
+        // NOTE: The fingerprint is calculated before reading the script source, so that the content is loaded once
+        val fingerprint = if (statementCache != null) content?.fingerprint else null
+        val cachedBounds = if (fingerprint != null) statementCache!!.load(fingerprint) else null
+
+        return openSource().buffered().use {
+            block(if (cachedBounds != null) readCachedStatements(it, cachedBounds, fingerprint!!) else readStatements(it, fingerprint))
+        }
+    }
+
+    /**
+     * Reads all the CQL statements contained in this script, parsing the script source on each call.
+     * All statements are held in memory, [useStatements] should be preferred for large scripts.
+     *
+     * @return The statements contained in the script source (in order).
+     */
+    fun readStatements(): List<String> {
+        return useStatements { it.toList() }
+    }
+
+    /**
+     * Creates the statement to execute for this CQL statement, applying the script read timeout.
+     *
+     * @param cql The CQL statement.
+     * @return The statement to execute.
+     */
+    private fun createStatement(cql: String): Statement {
+        return when {
+            timeout > 0 -> SimpleStatement(cql).setReadTimeoutMillis(timeout)
+            else        -> SimpleStatement(cql)
+        }
+    }
+
+    /**
+     * Waits for all in-flight statements to complete, in order.
+     *
+     * @param inFlight The in-flight statements.
+     * @throws CassandraMigrationException when any of the statements failed, reporting the first failed statement.
+     */
+    private fun drainStatements(inFlight: Deque<InFlightStatement>) {
+        while (inFlight.isNotEmpty()) {
+            awaitStatement(inFlight.removeFirst(), inFlight)
+        }
     }
 
     /**
-     * Parses this script's source into statements.
+     * Waits for this in-flight statement to complete. On failure, the remaining in-flight statements are awaited
+     * (ignoring their results) before the failure is reported, so no statement is left running.
      *
-     * @param cqlScriptSource The script source to parse.
-     * @return The parsed statements.
+     * @param statement The in-flight statement to wait for.
+     * @param inFlight The remaining in-flight statements.
+     * @throws CassandraMigrationException when the statement failed.
      */
-    private fun parse(cqlScriptSource: String): List<String> {
-        return linesToStatements(readLines(StringReader(cqlScriptSource)))
+    private fun awaitStatement(statement: InFlightStatement, inFlight: Deque<InFlightStatement>) {
+        try {
+            statement.future.uninterruptibly
+        } catch (e: Exception) {
+            inFlight.forEach {
+                try {
+                    it.future.uninterruptibly
+                } catch (ignored: Exception) {
+                    // Only the first failure is reported
+                }
+            }
+            inFlight.clear()
+
+            throw statementFailure(statement.index, statement.cql, e)
+        }
     }
 
     /**
-     * Turns these lines in a series of statements.
+     * Creates the failure to report for this failed statement.
      *
-     * @param lines The lines to analyse.
-     * @return The statements contained in these lines (in order).
-    */
-    private fun linesToStatements(lines: List<String>): List<String> {
-        val statements = ArrayList<String>()
+     * @param index The failed statement index in this script (0-based).
+     * @param cql The failed CQL statement.
+     * @param cause The statement failure cause.
+     * @return The failure to report.
+     */
+    private fun statementFailure(index: Int, cql: String, cause: Exception): CassandraMigrationException {
+        val location = if (resource != null) " in ${resource.location}" else ""
+        return CassandraMigrationException("Unable to execute statement #${index + 1}$location: $cql", cause)
+    }
 
+    /**
+     * Reads the statements from this reader, one statement at a time.
+     *
+     * @param reader The reader for the script source.
+     * @param fingerprint The fingerprint of the script source to cache the statement boundaries for, or `null` to not
+     *                    cache them.
+     * @param firstLine The index of the next line of the reader in the script source (0-based).
+     * @return The statements contained in the script source (in order), read lazily.
+     */
+    private fun readStatements(reader: BufferedReader, fingerprint: Fingerprint?, firstLine: Int = 0): Sequence<String> {
         var nonStandardDelimiter: Delimiter? = null
-        var cqlStatementBuilder = CqlStatementBuilder()
+        var lineNumber = firstLine
+        var isEndOfScript = false
+        val cqlStatementBuilder = CqlStatementBuilder()
+
+        var statementFirstLine = 0
+        val bounds = if (fingerprint != null && statementCache != null) ArrayList<StatementBounds>() else null
 
-        for (lineNumber in 1..lines.size) {
-            val line = lines[lineNumber - 1]
+        return generateSequence {
+            var cqlStatement: String? = null
+            cqlStatementBuilder.reset()
 
-            if (cqlStatementBuilder.isEmpty) {
-                if (!StringUtils.hasText(line)) {
-                    // Skip empty line between statements.
-                    continue
+            while (cqlStatement == null && !isEndOfScript) {
+                val line = readLine(reader, lineNumber == 0)
+                if (line == null) {
+                    isEndOfScript = true
+
+                    // Catch any statements not followed by delimiter.
+                    if (!cqlStatementBuilder.isEmpty) {
+                        cqlStatement = cqlStatementBuilder.cqlStatement
+                        bounds?.add(statementBounds(statementFirstLine, lineNumber - 1, cqlStatement))
+                    }
+                    break
                 }
+                lineNumber++
+
+                if (cqlStatementBuilder.isEmpty) {
+                    if (!StringUtils.hasText(line)) {
+                        // Skip empty line between statements.
+                        continue
+                    }
+
+                    val newDelimiter = cqlStatementBuilder.extractNewDelimiterFromLine(line)
+                    if (newDelimiter != null) {
+                        nonStandardDelimiter = newDelimiter
+                        // Skip this line as it was an explicit delimiter change directive outside of any statements.
+                        continue
+                    }
 
-                val newDelimiter = cqlStatementBuilder.extractNewDelimiterFromLine(line)
-                if (newDelimiter != null) {
-                    nonStandardDelimiter = newDelimiter
-                    // Skip this line as it was an explicit delimiter change directive outside of any statements.
-                    continue
+                    cqlStatementBuilder.setLineNumber(lineNumber)
+                    statementFirstLine = lineNumber - 1
+
+                    // Start a new statement, marking it with this line number.
+                    nonStandardDelimiter?.let { cqlStatementBuilder.setDelimiter(it) }
                 }
 
-                cqlStatementBuilder.setLineNumber(lineNumber)
+                cqlStatementBuilder.addLine(line)
 
-                // Start a new statement, marking it with this line number.
-                if (nonStandardDelimiter != null) {
-                    cqlStatementBuilder.setDelimiter(nonStandardDelimiter)
+                if (cqlStatementBuilder.canDiscard()) {
+                    cqlStatementBuilder.reset()
+                } else if (cqlStatementBuilder.isTerminated) {
+                    cqlStatement = cqlStatementBuilder.cqlStatement
+                    LOG.debug("Found statement: $cqlStatement")
+                    bounds?.add(statementBounds(statementFirstLine, lineNumber - 1, cqlStatement))
                 }
             }
 
-            cqlStatementBuilder.addLine(line)
+            // Cache the statement boundaries once the whole script has been parsed
+            if (cqlStatement == null && bounds != null) {
+                statementCache!!.store(fingerprint!!, bounds)
+            }
+
+            cqlStatement
+        }
+    }
+
+    /**
+     * Reads the statements at these cached boundaries from this reader, one statement at a time. Once all the cached
+     * statements are read, the rest of the script source is checked to contain no other statement.
+     *
+     * @param reader The reader for the script source.
+     * @param bounds The cached statement boundaries, in order.
+     * @param fingerprint The fingerprint of the script source.
+     * @return The statements contained in the script source (in order), read lazily.
+     * @throws CassandraMigrationException when the script source does not match the cached boundaries.
+     */
+    private fun readCachedStatements(reader: BufferedReader, bounds: List<StatementBounds>, fingerprint: Fingerprint): Sequence<String> {
+        var lineIndex = 0
+        val remainingBounds = bounds.iterator()
+
+        return generateSequence {
+            // GUARD: Check the rest of the script source once all the cached statements are read
+            if (!remainingBounds.hasNext()) {
+                checkEndOfCachedStatements(reader, lineIndex, fingerprint)
+                return@generateSequence null
+            }
+
+            val statementBounds = remainingBounds.next()
+            val cqlStatement = StringBuilder()
 
-            if (cqlStatementBuilder.canDiscard()) {
-                cqlStatementBuilder = CqlStatementBuilder()
-            } else if (cqlStatementBuilder.isTerminated) {
-                val cqlStatement = cqlStatementBuilder.cqlStatement
-                statements.add(cqlStatement)
-                LOG.debug("Found statement: $cqlStatement")
+            while (lineIndex <= statementBounds.lastLine) {
+                val line = readLine(reader, lineIndex == 0)
+                if (line == null || (lineIndex == statementBounds.lastLine && statementBounds.endColumn > line.length)) {
+                    throw cachedStatementsMismatch()
+                }
 
-                cqlStatementBuilder = CqlStatementBuilder()
+                if (lineIndex >= statementBounds.firstLine) {
+                    if (lineIndex > statementBounds.firstLine) {
+                        cqlStatement.append("\n")
+                    }
+                    cqlStatement.append(line, 0, if (lineIndex == statementBounds.lastLine) statementBounds.endColumn else line.length)
+                }
+                lineIndex++
             }
+
+            cqlStatement.toString()
+        }
+    }
+
+    /**
+     * Checks that the rest of the script source, after the last cached statement, contains no statement (only blank
+     * lines and comments) and that the script source has the expected number of lines.
+     *
+     * @param reader The reader for the rest of the script source.
+     * @param lineIndex The index of the next line of the reader in the script source (0-based).
+     * @param fingerprint The fingerprint of the script source.
+     * @throws CassandraMigrationException when the rest of the script source does not match the cached boundaries.
+     */
+    private fun checkEndOfCachedStatements(reader: BufferedReader, lineIndex: Int, fingerprint: Fingerprint) {
+        val lines = ArrayList<String>()
+        while (true) {
+            lines.add(readLine(reader, lineIndex + lines.size == 0) ?: break)
         }
 
-        // Catch any statements not followed by delimiter.
-        if (!cqlStatementBuilder.isEmpty) {
-            statements.add(cqlStatementBuilder.cqlStatement)
+        val remainingStatements = readStatements(BufferedReader(StringReader(lines.joinToString("\n"))), null, lineIndex)
+        if (lineIndex + lines.size != fingerprint.lineCount || remainingStatements.any()) {
+            throw cachedStatementsMismatch()
         }
+    }
 
-        return statements
+    /**
+     * @return The failure to report when the script source does not match its cached statement boundaries.
+     */
+    private fun cachedStatementsMismatch(): CassandraMigrationException {
+        val location = if (resource != null) " for ${resource.location}" else ""
+        return CassandraMigrationException("Cached statements$location do not match the script source")
     }
 
     /**
-     * Parses the textual data provided by this reader into a list of lines.
+     * Reads the next line from this reader.
      *
-     * @param reader The reader for the textual data.
-     * @return The list of lines (in order).
-     * @throws IllegalStateException when the textual data parsing failed.
-     * @throws CassandraMigrationException when textual data parsing failed.
+     * @param reader The reader for the script source.
+     * @param isFirstLine True if this is the first line, to strip the UTF-8 BOM if necessary.
+     * @return The next line, or `null` at the end of the script source.
+     * @throws CassandraMigrationException when the script source cannot be read.
      */
-    private fun readLines(reader: Reader): List<String> {
+    private fun readLine(reader: BufferedReader, isFirstLine: Boolean): String? {
         try {
-            return BufferedReader(reader).lineSequence().toList()
+            val line = reader.readLine()
+            return if (isFirstLine && line != null && line.startsWith("\ufeff")) line.substring(1) else line
         } catch (e: IOException) {
             val message = if (resource != null) { "${resource.location} (${resource.locationOnDisk})" } else "lines"
             throw CassandraMigrationException("Unable to parse $message", e)
         }
     }
 
+    /**
+     * A statement executed asynchronously, not yet known to have completed.
+     *
+     * @param index The statement index in this script (0-based).
+     * @param cql The CQL statement.
+     * @param future The statement result future.
+     */
+    private class InFlightStatement(val index: Int, val cql: String, val future: ResultSetFuture)
+
     /**
      * CqlScript companion object.
      */
     companion object {
         private val LOG = LogFactory.getLog(CqlScript::class.java)
+
+        /**
+         * The first keywords of the data manipulation (DML) statements, which can be executed concurrently.
+         */
+        private val DML_KEYWORDS = setOf("INSERT", "UPDATE", "DELETE", "BEGIN")
+
+        /**
+         * Checks whether this CQL statement is a data manipulation (DML) statement, i.e. an insert, update, delete or
+         * batch statement. Any other statement (e.g. schema changes) must be executed on its own.
+         *
+         * @param cql The CQL statement.
+         * @return `true` if the statement is a DML statement.
+         */
+        fun isDml(cql: String): Boolean {
+            val keyword = cql.trimStart().takeWhile { it.isLetter() }.toUpperCase()
+            return DML_KEYWORDS.contains(keyword)
+        }
+
+        /**
+         * Creates the boundaries of this statement, ending in its last line.
+         *
+         * @param firstLine The index of the first line of the statement (0-based).
+         * @param lastLine The index of the last line of the statement (0-based).
+         * @param cql The CQL statement, with the delimiter stripped.
+         * @return The statement boundaries.
+         */
+        private fun statementBounds(firstLine: Int, lastLine: Int, cql: String): StatementBounds {
+            return StatementBounds(firstLine, lastLine, cql.length - (cql.lastIndexOf('\n') + 1))
+        }
     }
 
 }
@@ -18,11 +18,12 @@
  */
 package com.hhandoko.cassandra.migration.internal.dbsupport
 
-import com.hhandoko.cassandra.migration.internal.util.StringUtils
-import java.util.*
-
 /**
  * Builds a CQL statement, one line at a time.
+ *
+ * Each line is analysed in a single pass over its characters, tracking the string literal, comment and delimiter state
+ * without regular expressions or intermediate tokens. The simplified line buffer is reused across lines (and across
+ * statements, see [reset]).
  */
 class CqlStatementBuilder {
 
@@ -31,6 +32,21 @@ class CqlStatementBuilder {
      */
     private val statement = StringBuilder()
 
+    /**
+     * The simplified current line (escaped quotes removed, whitespaces collapsed and trimmed), reused across lines.
+     */
+    private val simplifiedLine = StringBuilder()
+
+    /**
+     * The line being simplified.
+     */
+    private var scanLine = ""
+
+    /**
+     * The position of the next character to read from the line being simplified.
+     */
+    private var scanIndex = 0
+
     /**
      * The initial line number of this statement.
      */
@@ -53,16 +69,6 @@ class CqlStatementBuilder {
      */
     private var insideQuoteStringLiteral = false
 
-    /**
-     * Are we currently inside an alternate multi-line string literal.
-     */
-    private var insideAlternateQuoteStringLiteral = false
-
-    /**
-     * The alternate quote that is expected to close the string literal.
-     */
-    private var alternateQuote: String? = null
-
     /**
      * Whether the last processed line ended with a single line -- comment.
      */
@@ -81,13 +87,7 @@ class CqlStatementBuilder {
     /**
      * The current delimiter to look for to terminate the statement.
      */
-    private var delimiter = defaultDelimiter
-
-    /**
-     * @return The default delimiter for this database.
-     */
-    protected val defaultDelimiter: Delimiter
-        get() = Delimiter(";", false)
+    private var delimiter = DEFAULT_DELIMITER
 
     /**
      * @param lineNumber The initial line number of this statement.
@@ -109,6 +109,21 @@ class CqlStatementBuilder {
     val cqlStatement: String
         get() = statement.toString()
 
+    /**
+     * Resets this builder to start building a new statement, keeping its allocated buffers.
+     */
+    fun reset() {
+        statement.setLength(0)
+        lineNumber = 0
+        isEmpty = true
+        isTerminated = false
+        insideQuoteStringLiteral = false
+        lineEndsWithSingleLineComment = false
+        insideMultiLineComment = false
+        nonCommentStatementPartSeen = false
+        delimiter = DEFAULT_DELIMITER
+    }
+
     /**
      * Analyses this line and extracts the new default delimiter.
      * This method is only called between statements and looks for explicit delimiter change directives.
@@ -127,20 +142,10 @@ class CqlStatementBuilder {
      * @param line The line to analyse.
      * @return {@code true} if it is a directive that should be processed by the database, {@code false} if not.
      */
-    fun isCommentDirective(line: String): Boolean {
+    fun isCommentDirective(line: CharSequence): Boolean {
         return false
     }
 
-    /**
-     * Checks whether this line is just a single-line comment outside a statement or not.
-     *
-     * @param line The line to analyse.
-     * @return {@code true} if it is, {@code false} if not.
-     */
-    protected fun isSingleLineComment(line: String): Boolean {
-        return line.startsWith("--")
-    }
-
     /**
      * Adds this line to the current statement being built.
      *
@@ -153,23 +158,23 @@ class CqlStatementBuilder {
             statement.append("\n")
         }
 
-        val lineSimplified = simplifyLine(line)
+        simplifyLine(line)
 
-        applyStateChanges(lineSimplified)
+        applyStateChanges(simplifiedLine)
         if (endWithOpenMultilineStringLiteral() || insideMultiLineComment) {
             statement.append(line)
             return
         }
 
-        delimiter = changeDelimiterIfNecessary(lineSimplified, delimiter)
+        delimiter = changeDelimiterIfNecessary(simplifiedLine, delimiter)
 
         statement.append(line)
 
-        if (isCommentDirective(lineSimplified)) {
+        if (isCommentDirective(simplifiedLine)) {
             nonCommentStatementPartSeen = true
         }
 
-        if (!lineEndsWithSingleLineComment && lineTerminatesStatement(lineSimplified, delimiter)) {
+        if (!lineEndsWithSingleLineComment && lineTerminatesStatement(simplifiedLine, delimiter)) {
             stripDelimiter(statement, delimiter)
             isTerminated = true
         }
@@ -181,24 +186,87 @@ class CqlStatementBuilder {
      * @return {@code true} if it does, {@code false} if it doesn't.
      */
     fun endWithOpenMultilineStringLiteral(): Boolean {
-        return insideQuoteStringLiteral || insideAlternateQuoteStringLiteral
+        return insideQuoteStringLiteral
     }
 
     /**
      * @return Whether the current statement is only closed comments so far and can be discarded.
      */
     fun canDiscard(): Boolean {
-        return !insideAlternateQuoteStringLiteral && !insideQuoteStringLiteral && !insideMultiLineComment && !nonCommentStatementPartSeen
+        return !insideQuoteStringLiteral && !insideMultiLineComment && !nonCommentStatementPartSeen
     }
 
     /**
-     * Simplifies this line to make it easier to parse.
+     * Simplifies this line into the simplified line buffer to make it easier to parse: escaped quotes are removed,
+     * single line comment markers are separated from the surrounding text, whitespaces are collapsed and the line is
+     * trimmed.
      *
      * @param line The line to simplify.
-     * @return The simplified line.
      */
-    protected fun simplifyLine(line: String): String {
-        return removeEscapedQuotes(line).replace("--", " -- ").replace("\\s+".toRegex(), " ").trim { it <= ' ' }.toUpperCase()
+    private fun simplifyLine(line: String) {
+        val out = simplifiedLine
+        out.setLength(0)
+
+        scanLine = line
+        scanIndex = 0
+
+        var c = nextUnescapedChar()
+        while (c != END_OF_LINE) {
+            val next = nextUnescapedChar()
+
+            if (c == '-'.toInt() && next == '-'.toInt()) {
+                appendWhitespace(out)
+                out.append("--")
+                appendWhitespace(out)
+                c = nextUnescapedChar()
+                continue
+            }
+
+            when {
+                isWhitespace(c)                        -> appendWhitespace(out)
+                out.length == 0 && c <= ' '.toInt() -> { /* Trim leading control characters */ }
+                else                                   -> out.append(c.toChar())
+            }
+            c = next
+        }
+
+        var end = out.length
+        while (end > 0 && out[end - 1] <= ' ') {
+            end--
+        }
+        out.setLength(end)
+    }
+
+    /**
+     * Reads the next character of the line being simplified, skipping escaped quotes ('').
+     *
+     * @return The next character, or `END_OF_LINE` at the end of the line.
+     */
+    private fun nextUnescapedChar(): Int {
+        while (scanIndex < scanLine.length) {
+            val c = scanLine[scanIndex]
+            if (c == '\'' && scanIndex + 1 < scanLine.length && scanLine[scanIndex + 1] == '\'') {
+                scanIndex += 2
+                continue
+            }
+
+            scanIndex++
+            return c.toInt()
+        }
+
+        return END_OF_LINE
+    }
+
+    /**
+     * Appends a single whitespace to this simplified line, collapsing consecutive whitespaces and skipping leading
+     * ones.
+     *
+     * @param out The simplified line.
+     */
+    private fun appendWhitespace(out: StringBuilder) {
+        if (out.length > 0 && out[out.length - 1] != ' ') {
+            out.append(' ')
+        }
     }
 
     /**
@@ -210,184 +278,163 @@ class CqlStatementBuilder {
      * @return The new delimiter to use (can be the same as the current one) or `null` for no delimiter.
      */
     @SuppressWarnings("UnusedDeclaration")
-    protected fun changeDelimiterIfNecessary(line: String, delimiter: Delimiter): Delimiter {
+    private fun changeDelimiterIfNecessary(line: CharSequence, delimiter: Delimiter): Delimiter {
         return delimiter
     }
 
     /**
      * Checks whether this line terminates the current statement.
      *
-     * @param line The line to check.
+     * @param line The simplified line to check.
      * @param delimiter The current delimiter.
      * @return {@code true} if it does, {@code false} if it doesn't.
      */
-    private fun lineTerminatesStatement(line: String, delimiter: Delimiter?): Boolean {
+    private fun lineTerminatesStatement(line: CharSequence, delimiter: Delimiter?): Boolean {
         if (delimiter == null) {
             return false
         }
 
-        val upperCaseDelimiter = delimiter.delimiter.toUpperCase()
-
-        if (delimiter.isAloneOnLine) {
-            return line == upperCaseDelimiter
+        val delimiterString = delimiter.delimiter
+        if (delimiter.isAloneOnLine && line.length != delimiterString.length) {
+            return false
         }
 
-        return line.endsWith(upperCaseDelimiter)
-    }
-
-    /**
-     * Extracts the alternate open quote from this token (if any).
-     *
-     * @param token The token to check.
-     * @return The alternate open quote. `null` if none.
-     */
-    protected fun extractAlternateOpenQuote(token: String): String? {
-        return null
+        val offset = line.length - delimiterString.length
+        if (offset < 0) {
+            return false
+        }
+        for (i in 0..delimiterString.length - 1) {
+            if (Character.toUpperCase(line[offset + i]) != Character.toUpperCase(delimiterString[i])) {
+                return false
+            }
+        }
+        return true
     }
 
     /**
-     * Computes the alternate closing quote for this open quote.
+     * Applies any state changes resulting from this simplified line being added.
      *
-     * @param openQuote The alternate open quote.
-     * @return The close quote.
-     */
-    protected fun computeAlternateCloseQuote(openQuote: String): String {
-        return openQuote
-    }
-
-    /**
-     * Applies any state changes resulting from this line being added.
+     * The line is split into tokens on whitespaces and the special characters that naturally occur in CQL, but are not
+     * opening or closing string literals. Empty tokens in between separators count as other tokens, trailing ones are
+     * ignored.
      *
-     * @param line The line that was just added to the statement.
+     * @param line The simplified line that was just added to the statement.
      */
-    protected fun applyStateChanges(line: String) {
-        // Ignore all special characters that naturally occur in CQL, but are not opening or closing string literals
-        val tokens = StringUtils.tokenizeToStringArray(line, " @<>;:=|(),+{}")
-
-        val delimitingTokens = extractStringLiteralDelimitingTokens(tokens)
-
+    private fun applyStateChanges(line: CharSequence) {
         lineEndsWithSingleLineComment = false
-        for (delimitingToken in delimitingTokens) {
-            if (!insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral
-                    && TokenType.MULTI_LINE_COMMENT == delimitingToken) {
-                insideMultiLineComment = !insideMultiLineComment
-            }
 
-            if (!insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral && !insideMultiLineComment
-                    && TokenType.SINGLE_LINE_COMMENT == delimitingToken) {
-                lineEndsWithSingleLineComment = true
-                return
-            }
+        // GUARD: An empty line is a single empty token
+        if (line.length == 0) {
+            applyToken(TokenType.OTHER)
+            return
+        }
 
-            if (!insideMultiLineComment && !insideQuoteStringLiteral &&
-                    TokenType.ALTERNATE_QUOTE == delimitingToken) {
-                insideAlternateQuoteStringLiteral = !insideAlternateQuoteStringLiteral
+        var pendingEmptyTokens = 0
+        var start = 0
+        while (start < line.length) {
+            var end = start
+            while (end < line.length && !isTokenSeparator(line[end])) {
+                end++
             }
 
-            if (!insideMultiLineComment && !insideAlternateQuoteStringLiteral &&
-                    TokenType.QUOTE == delimitingToken) {
-                insideQuoteStringLiteral = !insideQuoteStringLiteral
+            if (end == start) {
+                pendingEmptyTokens++
+            } else {
+                while (pendingEmptyTokens > 0) {
+                    if (!applyToken(TokenType.OTHER)) return
+                    pendingEmptyTokens--
+                }
+                if (!applyTokenAt(line, start, end)) return
             }
 
-            if (!insideMultiLineComment && !insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral &&
-                    TokenType.OTHER == delimitingToken) {
-                nonCommentStatementPartSeen = true
-            }
+            start = end + 1
         }
     }
 
     /**
-     * Extract the type of all tokens that potentially delimit string literals.
+     * Applies any state changes resulting from the token found at this position of the line.
      *
-     * @param tokens The tokens to analyse.
-     * @return The list of potentially delimiting string literals token types per token.
-     *         Tokens that do not have any impact on string delimiting are discarded.
-     */
-    private fun extractStringLiteralDelimitingTokens(tokens: Array<String>): List<TokenType> {
-        val delimitingTokens = ArrayList<TokenType>()
-        for (token in tokens) {
-            val cleanToken = cleanToken(token)
-            var handled = false
-
-            if (alternateQuote == null) {
-                val alternateQuoteFromToken = extractAlternateOpenQuote(cleanToken)
-                if (alternateQuoteFromToken != null) {
-                    val closeQuote = computeAlternateCloseQuote(alternateQuoteFromToken)
-                    if (cleanToken.length >= alternateQuoteFromToken.length + closeQuote.length
-                            && cleanToken.startsWith(alternateQuoteFromToken) && cleanToken.endsWith(closeQuote)) {
-                        //Skip $$abc$$, ...
-                        continue
-                    }
-
-                    alternateQuote = closeQuote
-                    delimitingTokens.add(TokenType.ALTERNATE_QUOTE)
-
-                    continue
-                }
-            }
-            if (alternateQuote != null && cleanToken.endsWith(alternateQuote!!)) {
-                alternateQuote = null
-                delimitingTokens.add(TokenType.ALTERNATE_QUOTE)
-                continue
-            }
-
-            if (cleanToken.length >= 2 && cleanToken.startsWith("'") && cleanToken.endsWith("'")) {
-                //Skip '', 'abc', ...
-                continue
-            }
-            if (cleanToken.length >= 4 && cleanToken.startsWith("/*") && cleanToken.endsWith("*/")) {
-                //Skip /**/, /*comment*/, ...
-                continue
-            }
+     * @param line The simplified line.
+     * @param tokenStart The token start index (inclusive).
+     * @param tokenEnd The token end index (exclusive).
+     * @return `false` if the rest of the line is a single line comment and must not be analysed further.
+     */
+    private fun applyTokenAt(line: CharSequence, tokenStart: Int, tokenEnd: Int): Boolean {
+        var start = tokenStart
+        var end = tokenEnd
+        while (start < end && line[start] <= ' ') start++
+        while (end > start && line[end - 1] <= ' ') end--
+
+        val length = end - start
+        val startsWithQuote = length >= 1 && line[start] == '\''
+        val endsWithQuote = length >= 1 && line[end - 1] == '\''
+        val startsWithComment = length >= 2 && line[start] == '/' && line[start + 1] == '*'
+        val endsWithComment = length >= 2 && line[end - 2] == '*' && line[end - 1] == '/'
+        val startsWithSingleLineComment = length >= 2 && line[start] == '-' && line[start + 1] == '-'
+
+        if (length >= 2 && startsWithQuote && endsWithQuote) {
+            //Skip '', 'abc', ...
+            return true
+        }
+        if (length >= 4 && startsWithComment && endsWithComment) {
+            //Skip /**/, /*comment*/, ...
+            return true
+        }
 
-            if (isSingleLineComment(cleanToken)) {
-                delimitingTokens.add(TokenType.SINGLE_LINE_COMMENT)
-                handled = true
-            }
+        var handled = false
+        if (startsWithSingleLineComment) {
+            if (!applyToken(TokenType.SINGLE_LINE_COMMENT)) return false
+            handled = true
+        }
 
-            if (cleanToken.startsWith("/*")) {
-                delimitingTokens.add(TokenType.MULTI_LINE_COMMENT)
-                handled = true
-            } else if (cleanToken.startsWith("'")) {
-                delimitingTokens.add(TokenType.QUOTE)
-                handled = true
-            }
+        if (startsWithComment) {
+            applyToken(TokenType.MULTI_LINE_COMMENT)
+            handled = true
+        } else if (startsWithQuote) {
+            applyToken(TokenType.QUOTE)
+            handled = true
+        }
 
-            if (!cleanToken.startsWith("/*") && cleanToken.endsWith("*/")) {
-                delimitingTokens.add(TokenType.MULTI_LINE_COMMENT)
-                handled = true
-            } else if (!cleanToken.startsWith("'") && cleanToken.endsWith("'")) {
-                delimitingTokens.add(TokenType.QUOTE)
-                handled = true
-            }
+        if (!startsWithComment && endsWithComment) {
+            applyToken(TokenType.MULTI_LINE_COMMENT)
+            handled = true
+        } else if (!startsWithQuote && endsWithQuote) {
+            applyToken(TokenType.QUOTE)
+            handled = true
+        }
 
-            if (!handled) {
-                delimitingTokens.add(TokenType.OTHER)
-            }
+        if (!handled) {
+            applyToken(TokenType.OTHER)
         }
 
-        return delimitingTokens
+        return true
     }
 
     /**
-     * Removes escaped quotes from this token.
+     * Applies any state changes resulting from a token of this type.
      *
-     * @param token The token to parse.
-     * @return The cleaned token.
+     * @param token The token type.
+     * @return `false` if the token starts a single line comment, i.e. the rest of the line must not be analysed.
      */
-    protected fun removeEscapedQuotes(token: String): String {
-        return StringUtils.replaceAll(token, "''", "")
-    }
+    private fun applyToken(token: TokenType): Boolean {
+        if (!insideQuoteStringLiteral && TokenType.MULTI_LINE_COMMENT == token) {
+            insideMultiLineComment = !insideMultiLineComment
+        }
 
-    /**
-     * Performs additional cleanup on this token, such as removing charset casting that prefixes string literals.
-     * Must be implemented in dialect specific sub classes.
-     *
-     * @param token The token to clean.
-     * @return The cleaned token.
-     */
-    protected fun cleanToken(token: String): String {
-        return token
+        if (!insideQuoteStringLiteral && !insideMultiLineComment && TokenType.SINGLE_LINE_COMMENT == token) {
+            lineEndsWithSingleLineComment = true
+            return false
+        }
+
+        if (!insideMultiLineComment && TokenType.QUOTE == token) {
+            insideQuoteStringLiteral = !insideQuoteStringLiteral
+        }
+
+        if (!insideMultiLineComment && !insideQuoteStringLiteral && TokenType.OTHER == token) {
+            nonCommentStatementPartSeen = true
+        }
+
+        return true
     }
 
     /**
@@ -401,9 +448,6 @@ class CqlStatementBuilder {
         /** Token opens or closes a ' string literal. */
         QUOTE,
 
-        /** Token opens or closes an alternate string literal. */
-        ALTERNATE_QUOTE,
-
         /** Token starts end of line comment. */
         SINGLE_LINE_COMMENT,
 
@@ -417,6 +461,40 @@ class CqlStatementBuilder {
      */
     companion object {
 
+        /**
+         * The default delimiter.
+         */
+        private val DEFAULT_DELIMITER = Delimiter(";", false)
+
+        /**
+         * Marker returned when there are no more characters to read from a line.
+         */
+        private val END_OF_LINE = -1
+
+        /**
+         * Checks whether this character is a whitespace, i.e. one of the characters matched by `\s`.
+         *
+         * @param c The character to check.
+         * @return {@code true} if it is, {@code false} if not.
+         */
+        private fun isWhitespace(c: Int): Boolean {
+            return c == ' '.toInt() || c == '\t'.toInt() || c == '\n'.toInt() || c == 0x0B || c == '\u000C'.toInt() || c == '\r'.toInt()
+        }
+
+        /**
+         * Checks whether this character separates tokens, i.e. a whitespace or a special character that naturally
+         * occurs in CQL, but does not open or close string literals.
+         *
+         * @param c The character to check.
+         * @return {@code true} if it is, {@code false} if not.
+         */
+        private fun isTokenSeparator(c: Char): Boolean {
+            return when (c) {
+                ' ', '@', '<', '>', ';', ':', '=', '|', '(', ')', ',', '+', '{', '}' -> true
+                else                                                                -> false
+            }
+        }
+
         /**
          * Strips this delimiter from this cql statement.
          *
@@ -0,0 +1,195 @@
+/**
+ * File     : CqlStatementCache.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent.Fingerprint
+import java.io.*
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * On-disk cache of the statement boundaries of parsed CQL scripts, keyed by the SHA-256 digest of the script bytes, the
+ * charset the script is decoded with (as the boundaries are positions in the decoded text) and the parser version. The
+ * byte length and line count of the script are also stored, and checked when loaded.
+ *
+ * Each script is cached in its own compact binary file, written to a temporary file first and atomically moved into
+ * place, so the cache directory can safely be shared by concurrent JVMs. Unreadable or partially written entries are
+ * treated as cache misses. The cache is bounded to `maxEntries` files, the least recently used ones (by last modified
+ * time, updated on each cache hit) are evicted first.
+ *
+ * @param directory The cache directory, created if it does not exist.
+ * @param maxEntries The maximum number of cached scripts.
+ */
+class CqlStatementCache(private val directory: File, private val maxEntries: Int) {
+
+    /**
+     * Loads the cached statement boundaries of the script with this fingerprint.
+     *
+     * @param fingerprint The script fingerprint.
+     * @return The statement boundaries, in order, or `null` if the script is not cached.
+     */
+    fun load(fingerprint: Fingerprint): List<StatementBounds>? {
+        val file = entryFile(fingerprint)
+
+        // GUARD: Cache miss
+        if (!file.isFile) return null
+
+        try {
+            val bounds = DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != PARSER_VERSION || input.readUTF() != fingerprint.charset ||
+                        input.readUTF() != fingerprint.digest || input.readLong() != fingerprint.byteLength ||
+                        input.readInt() != fingerprint.lineCount) {
+                    return null
+                }
+
+                val count = input.readInt()
+                (1..count).map { StatementBounds(input.readInt(), input.readInt(), input.readInt()) }
+            }
+
+            file.setLastModified(System.currentTimeMillis())
+            return bounds
+        } catch (e: IOException) {
+            LOG.debug("Unable to read cached statements from $file: ${e.message}")
+            return null
+        }
+    }
+
+    /**
+     * Stores the statement boundaries of the script with this fingerprint, evicting the least recently used scripts if
+     * the cache is full. Failures are logged and ignored, as the cache is only an optimisation.
+     *
+     * @param fingerprint The script fingerprint.
+     * @param bounds The statement boundaries, in order.
+     */
+    fun store(fingerprint: Fingerprint, bounds: List<StatementBounds>) {
+        try {
+            directory.mkdirs()
+
+            val tempFile = File.createTempFile("${entryName(fingerprint)}-", TEMP_SUFFIX, directory)
+            try {
+                DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { output ->
+                    output.writeInt(MAGIC)
+                    output.writeInt(PARSER_VERSION)
+                    output.writeUTF(fingerprint.charset)
+                    output.writeUTF(fingerprint.digest)
+                    output.writeLong(fingerprint.byteLength)
+                    output.writeInt(fingerprint.lineCount)
+                    output.writeInt(bounds.size)
+                    bounds.forEach {
+                        output.writeInt(it.firstLine)
+                        output.writeInt(it.lastLine)
+                        output.writeInt(it.endColumn)
+                    }
+                }
+                moveIntoPlace(tempFile, entryFile(fingerprint))
+            } finally {
+                tempFile.delete()
+            }
+
+            evict()
+        } catch (e: IOException) {
+            LOG.warn("Unable to cache statements in $directory: ${e.message}")
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its bounds. Entries concurrently evicted by
+     * another JVM are ignored.
+     */
+    private fun evict() {
+        val entries = directory.listFiles { file -> file.name.endsWith(ENTRY_SUFFIX) } ?: return
+
+        // GUARD: Cache within bounds
+        if (entries.size <= maxEntries) return
+
+        entries.sortedBy { it.lastModified() }
+                .take(entries.size - maxEntries)
+                .forEach { it.delete() }
+    }
+
+    /**
+     * @param fingerprint The script fingerprint.
+     * @return The cache entry file for the script with this fingerprint.
+     */
+    private fun entryFile(fingerprint: Fingerprint): File {
+        return File(directory, entryName(fingerprint) + ENTRY_SUFFIX)
+    }
+
+    /**
+     * Statement boundaries in a CQL script source, as the lines spanned by the statement with the delimiter stripped.
+     *
+     * @param firstLine The index of the first line of the statement (0-based).
+     * @param lastLine The index of the last line of the statement (0-based).
+     * @param endColumn The end of the statement in its last line (exclusive).
+     */
+    data class StatementBounds(val firstLine: Int, val lastLine: Int, val endColumn: Int)
+
+    /**
+     * CqlStatementCache companion object.
+     */
+    companion object {
+        private val LOG = LogFactory.getLog(CqlStatementCache::class.java)
+
+        /**
+         * The version of the statement parser (CqlStatementBuilder), to be incremented whenever the way statements are
+         * split changes so that previously cached boundaries are ignored.
+         */
+        val PARSER_VERSION = 1
+
+        /**
+         * The cache entry file header, changed whenever the cache entry file format changes.
+         */
+        private val MAGIC = 0x43514c33
+
+        /**
+         * The cache entry file suffix.
+         */
+        private val ENTRY_SUFFIX = ".stmts"
+
+        /**
+         * The suffix of cache entry files being written.
+         */
+        private val TEMP_SUFFIX = ".tmp"
+
+        /**
+         * @param fingerprint The script fingerprint.
+         * @return The cache entry name for the script with this fingerprint.
+         */
+        private fun entryName(fingerprint: Fingerprint): String {
+            return "v$PARSER_VERSION-${fingerprint.charset}-${fingerprint.digest}"
+        }
+
+        /**
+         * Moves this file into place, atomically if supported by the file system, replacing any existing entry (which
+         * has the same content if written by another JVM).
+         *
+         * @param source The file to move.
+         * @param target The target file.
+         */
+        private fun moveIntoPlace(source: File, target: File) {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * File     : SchemaAgreement.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.datastax.driver.core.ExecutionInfo
+import com.datastax.driver.core.Session
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+
+/**
+ * Schema agreement barrier, waiting for all nodes in the cluster to agree on the schema version after schema changes.
+ *
+ * The cluster metadata is polled with an exponential backoff (starting at `backoffMillis`, doubled after each poll),
+ * until the schema is in agreement or the deadline is reached.
+ *
+ * @param backoffMillis The initial delay between schema agreement checks in milliseconds.
+ * @param deadlineMillis The maximum time to wait for schema agreement in milliseconds.
+ */
+class SchemaAgreement(private val backoffMillis: Long, private val deadlineMillis: Long) {
+
+    /**
+     * The total time waited for schema agreement so far, in milliseconds.
+     */
+    var waitMillis = 0L
+        private set
+
+    /**
+     * Waits for schema agreement, unless the execution info of the last statement shows it has already been reached
+     * (i.e. the statement was not a schema change, or the driver has already waited for the agreement).
+     *
+     * @param session The Cassandra session connection.
+     * @param executionInfo The execution info of the last statement, `null` to always check the cluster metadata.
+     * @throws CassandraMigrationException when the schema agreement is not reached within the deadline.
+     */
+    @Throws(CassandraMigrationException::class)
+    fun await(session: Session, executionInfo: ExecutionInfo? = null) {
+        // GUARD: Skip if the driver has already confirmed schema agreement
+        if (executionInfo != null && executionInfo.isSchemaInAgreement) return
+
+        val metadata = session.cluster.metadata
+        val start = System.currentTimeMillis()
+        var backoff = Math.max(backoffMillis, 1L)
+        var elapsed = 0L
+
+        try {
+            while (!metadata.checkSchemaAgreement()) {
+                elapsed = System.currentTimeMillis() - start
+                if (elapsed >= deadlineMillis) {
+                    throw CassandraMigrationException("Schema agreement not reached within $deadlineMillis ms")
+                }
+
+                LOG.debug("Schema not in agreement, checking again in $backoff ms")
+                Thread.sleep(Math.min(backoff, deadlineMillis - elapsed))
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS)
+            }
+            elapsed = System.currentTimeMillis() - start
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw CassandraMigrationException("Interrupted while waiting for schema agreement", e)
+        } finally {
+            waitMillis += elapsed
+        }
+    }
+
+    /**
+     * SchemaAgreement companion object.
+     */
+    companion object {
+        private val LOG = LogFactory.getLog(SchemaAgreement::class.java)
+
+        /**
+         * The maximum delay between schema agreement checks in milliseconds.
+         */
+        private val MAX_BACKOFF_MILLIS = 5000L
+    }
+
+}
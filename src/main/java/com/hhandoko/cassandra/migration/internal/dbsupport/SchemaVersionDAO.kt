@@ -23,8 +23,10 @@ import com.datastax.driver.core.exceptions.InvalidQueryException
 import com.datastax.driver.core.querybuilder.QueryBuilder
 import com.datastax.driver.core.querybuilder.QueryBuilder.eq
 import com.datastax.driver.core.querybuilder.Select
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.MigrationType
 import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.api.configuration.InstalledRankAllocation
 import com.hhandoko.cassandra.migration.api.configuration.KeyspaceConfiguration
 import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
 import com.hhandoko.cassandra.migration.internal.util.CachePrepareStatement
@@ -37,10 +39,17 @@ import java.util.*
  * @param session The Cassandra session connection to use to execute the migration.
  * @param keyspaceConfig The Cassandra keyspace to connect to.
  * @param tableName The Cassandra migration version table name.
+ * @param rankAllocation The installed rank allocation strategy for the migration version table.
+ * @param cachePs The prepared statements cache of the session, which may be shared by the DAOs of the same session.
  */
-open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: KeyspaceConfiguration, val tableName: String) {
+open class SchemaVersionDAO(
+    private val session: Session,
+    val keyspaceConfig: KeyspaceConfiguration,
+    val tableName: String,
+    val rankAllocation: InstalledRankAllocation = InstalledRankAllocation.COUNTER,
+    private val cachePs: CachePrepareStatement = CachePrepareStatement(session)
+) {
 
-    private val cachePs: CachePrepareStatement
     private val consistencyLevel: ConsistencyLevel
 
     // TODO: Break SchemaVersionDAO into service and table-specific mappings.
@@ -52,16 +61,43 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     private val createSchemaMigrationCounterTableStmt: SimpleStatement by lazy { buildCreateSchemaMigrationCounterTableStmt() }
     private val countSchemaMigrationTableQuery: Select by lazy { buildCountSchemaMigrationTableQuery() }
     private val countSchemaMigrationCounterTableQuery: Select by lazy { buildCountSchemaMigrationCounterTableQuery() }
+    private val findSchemaMigrationTablesQuery: Select by lazy { buildFindSchemaMigrationTablesQuery() }
     private val insertSchemaMigrationTableStmt: PreparedStatement by lazy { buildInsertSchemaMigrationRecordStmt() }
+    private val insertSchemaMigrationTableIfNotExistsStmt: PreparedStatement by lazy { buildInsertSchemaMigrationRecordIfNotExistsStmt() }
     private val findAppliedMigrationsQuery: Select by lazy { buildFindAppliedMigrationsQuery() }
     private val incrementInstalledRankStmt: SimpleStatement by lazy { buildIncrementInstalledRankStmt() }
     private val findInstalledRankCountColQuery: Select by lazy { buildFindInstalledRankCountColQuery() }
-    private val findVersionRankQuery: Select by lazy { buildFindVersionRankQuery() }
     private val updateVersionRankStmt: PreparedStatement by lazy { buildUpdateVersionRankStmt() }
+    private val createRankClaimTableStmt: SimpleStatement by lazy { buildCreateRankClaimTableStmt() }
+    private val insertRankClaimIfNotExistsStmt: PreparedStatement by lazy { buildInsertRankClaimIfNotExistsStmt() }
+    private val replaceFailedSchemaMigrationRecordStmt: PreparedStatement by lazy { buildReplaceFailedSchemaMigrationRecordStmt() }
 
-    init {
-        this.cachePs = CachePrepareStatement(session)
+    /**
+     * In-memory ledger of the applied migrations, loaded once and written through on each insert.
+     */
+    private var ledger: AppliedMigrationLedger? = null
+
+    /**
+     * Cached result of the schema migration version tables existence check, invalidated on DDL.
+     */
+    private var tablesExistCache: Boolean? = null
+
+    /**
+     * Asynchronously added applied migration records, in the order they were added, yet to be flushed.
+     */
+    private val pendingWrites = ArrayDeque<PendingWrite>()
+
+    /**
+     * Whether the installed rank claims table has been created (if it did not exist) by this DAO.
+     */
+    private var rankClaimTableCreated = false
 
+    /**
+     * The identifier of the installed rank claims made by this DAO, to tell retried claims from concurrent ones.
+     */
+    private val rankClaimId = UUID.randomUUID()
+
+    init {
         // If running on a single host, don't force ConsistencyLevel.ALL
         val isClustered = session.cluster.metadata.allHosts.size > 1
         // Use configuration consistency if provided, otherwise default to `ALL` on cluster or `ONE` on single host
@@ -81,16 +117,95 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
         // GUARD: Skip table creation if already exists
         if (tablesExist()) return
 
+        tablesExistCache = null
         session.execute(createSchemaMigrationTableStmt)
         session.execute(createSchemaMigrationCounterTableStmt)
     }
 
+    /**
+     * Prepares the statements recording applied migrations ahead of the first migration, if the schema migration
+     * version tables exist. The prepared statements are kept in the prepared statements cache of the session.
+     * The installed rank claim statement is only prepared if the installed rank claims table is known to exist.
+     */
+    fun prepareStatements() {
+        // GUARD: The statements cannot be prepared before the tables are created
+        if (!tablesExist()) return
+
+        when (rankAllocation) {
+            InstalledRankAllocation.COUNTER     -> insertSchemaMigrationTableStmt
+            InstalledRankAllocation.CONDITIONAL -> {
+                insertSchemaMigrationTableIfNotExistsStmt
+                if (metadataRankClaimTableExists()) {
+                    insertRankClaimIfNotExistsStmt
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the installed rank claims table has already been created, using the driver's cluster metadata.
+     *
+     * @return `true` if the installed rank claims table exists in the keyspace metadata.
+     */
+    private fun metadataRankClaimTableExists(): Boolean {
+        val keyspace = session.cluster.metadata.getKeyspace(Metadata.quote(keyspaceConfig.name)) ?: return false
+        return keyspace.getTable(Metadata.quote(tableName + RANKS_TABLE_NAME_SUFFIX)) != null
+    }
+
     /**
      * Check if schema migration version table has already been created.
+     * The result is cached for the lifetime of this DAO, and invalidated when the tables are created.
      *
      * @return `true` if schema migration version table exists in the keyspace.
      */
     open fun tablesExist(): Boolean {
+        return tablesExistCache ?: let {
+            val exists = metadataTablesExist() ?: systemSchemaTablesExist() ?: probeTablesExist()
+            tablesExistCache = exists
+            exists
+        }
+    }
+
+    /**
+     * Check if schema migration version table has already been created, using the driver's cluster metadata.
+     * Only a positive result is trusted, as the metadata may not reflect yet the tables just created by another
+     * process (schema change events are processed asynchronously).
+     *
+     * @return `true` if schema migration version table exists in the keyspace, or `null` if it cannot be confirmed
+     *         from the metadata (e.g. schema metadata is disabled, or is not up to date).
+     */
+    private fun metadataTablesExist(): Boolean? {
+        val keyspace = session.cluster.metadata.getKeyspace(Metadata.quote(keyspaceConfig.name)) ?: return null
+
+        val schemaVersionTableExists = keyspace.getTable(Metadata.quote(tableName)) != null
+        val schemaVersionCountsTableExists = keyspace.getTable(Metadata.quote(tableName + COUNTS_TABLE_NAME_SUFFIX)) != null
+
+        return if (schemaVersionTableExists && schemaVersionCountsTableExists) true else null
+    }
+
+    /**
+     * Check if schema migration version table has already been created, using the `system_schema.tables` table.
+     *
+     * @return `true` if schema migration version table exists in the keyspace, or `null` if `system_schema` is not
+     *         available (i.e. Cassandra versions prior to 3.0).
+     */
+    private fun systemSchemaTablesExist(): Boolean? {
+        try {
+            val tableNames = session.execute(findSchemaMigrationTablesQuery).map { it.getString("table_name") }
+            return tableNames.contains(tableName) && tableNames.contains(tableName + COUNTS_TABLE_NAME_SUFFIX)
+        } catch (e: InvalidQueryException) {
+            LOG.debug("Unable to read system_schema.tables, falling back to querying the schema version tables")
+            return null
+        }
+    }
+
+    /**
+     * Check if schema migration version table has already been created, by querying the tables directly.
+     * See ISSUE #17 below for why `SELECT *` is used.
+     *
+     * @return `true` if schema migration version table exists in the keyspace.
+     */
+    private fun probeTablesExist(): Boolean {
         var schemaVersionTableExists = false
         var schemaVersionCountsTableExists = false
 
@@ -119,22 +234,98 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
      * Add applied migration record into the schema migration version table.
      *
      * @param appliedMigration The applied migration.
+     * @return The applied migration as recorded, including its version and installed ranks.
      */
-    fun addAppliedMigration(appliedMigration: AppliedMigration) {
-        createTablesIfNotExist()
+    open fun addAppliedMigration(appliedMigration: AppliedMigration): AppliedMigration {
+        return recordAppliedMigration(appliedMigration, async = false)
+    }
+
+    /**
+     * Add applied migration record into the schema migration version table asynchronously.
+     * The record is written in the background, and is only guaranteed to be persisted once
+     * [flushAppliedMigrations] returns.
+     *
+     * @param appliedMigration The applied migration.
+     * @return The applied migration as recorded, including its version and installed ranks.
+     */
+    open fun addAppliedMigrationAsync(appliedMigration: AppliedMigration): AppliedMigration {
+        return recordAppliedMigration(appliedMigration, async = true)
+    }
+
+    /**
+     * Wait for all asynchronously added applied migration records to be written.
+     *
+     * @throws CassandraMigrationException when any of the records could not be written.
+     */
+    @Throws(CassandraMigrationException::class)
+    open fun flushAppliedMigrations() {
+        while (pendingWrites.isNotEmpty()) {
+            val pendingWrite = pendingWrites.removeFirst()
+            try {
+                checkInsertResult(pendingWrite.future.uninterruptibly, pendingWrite.installedRank, pendingWrite.appliedMigration)
+            } catch (e: Exception) {
+                // NOTE: The ledger may contain records that were not written, reload it on next use
+                pendingWrites.clear()
+                ledger = null
+
+                if (e is CassandraMigrationException) throw e
+                throw CassandraMigrationException("Unable to record migration version ${pendingWrite.appliedMigration.version} in schema version table $tableName", e)
+            }
+        }
+    }
+
+    /**
+     * Record applied migration into the schema migration version table, and into the in-memory ledger.
+     *
+     * @param appliedMigration The applied migration.
+     * @param async True to write the record asynchronously.
+     * @return The applied migration as recorded, including its version and installed ranks.
+     */
+    private fun recordAppliedMigration(appliedMigration: AppliedMigration, async: Boolean): AppliedMigration {
+        val ledger = loadLedger()
 
-        val versionRank = calculateVersionRank(appliedMigration.version!!)
-        val installedRank = calculateInstalledRank()
+        val versionRank = ledger.versionRank(appliedMigration.version!!)
+        val installedRank = when (rankAllocation) {
+            InstalledRankAllocation.COUNTER     -> calculateInstalledRank()
+            InstalledRankAllocation.CONDITIONAL -> claimInstalledRank(ledger.nextInstalledRank(), appliedMigration)
+        }
 
-        val statement = boundInsertSchemaMigrationRecordStmt(versionRank, installedRank, appliedMigration)
+        val statement = when (rankAllocation) {
+            InstalledRankAllocation.COUNTER     -> boundInsertSchemaMigrationRecordStmt(insertSchemaMigrationTableStmt, versionRank, installedRank, appliedMigration)
+            InstalledRankAllocation.CONDITIONAL -> boundInsertSchemaMigrationRecordStmt(insertSchemaMigrationTableIfNotExistsStmt, versionRank, installedRank, appliedMigration)
+        }
+        // NOTE: The record is claimed with a lightweight transaction, a retried insert is detected when checking the result
+        statement.setIdempotent(rankAllocation == InstalledRankAllocation.CONDITIONAL)
+
+        if (async) {
+            pendingWrites.add(PendingWrite(session.executeAsync(statement), installedRank, appliedMigration))
+        } else {
+            checkInsertResult(session.execute(statement), installedRank, appliedMigration)
+            LOG.debug("Schema version table $tableName successfully updated to reflect changes")
+        }
 
-        session.execute(statement)
+        val recordedMigration = AppliedMigration(
+                versionRank,
+                installedRank,
+                appliedMigration.version!!,
+                appliedMigration.description!!,
+                appliedMigration.type!!,
+                appliedMigration.script ?: "",
+                appliedMigration.checksum,
+                Date(),
+                appliedMigration.installedBy ?: "",
+                appliedMigration.executionTime,
+                appliedMigration.isSuccess
+        )
+        ledger.add(recordedMigration)
 
-        LOG.debug("Schema version table $tableName successfully updated to reflect changes")
+        return recordedMigration
     }
 
     /**
      * Retrieve the applied migrations from the schema migration version table.
+     * Pending asynchronous records are written first, and the in-memory applied migrations ledger is reloaded from the
+     * results.
      *
      * @return The applied migrations.
      */
@@ -142,6 +333,30 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
         // GUARD: Return empty array if tables does not exists
         if (!tablesExist()) return ArrayList()
 
+        flushAppliedMigrations()
+
+        val resultsList = readAppliedMigrations()
+        ledger = AppliedMigrationLedger(resultsList)
+
+        return resultsList
+    }
+
+    /**
+     * Retrieve the applied migrations from the metadata table.
+     *
+     * @param migrationTypes The migration types to find.
+     * @return The applied migrations.
+     */
+    open fun findAppliedMigrations(vararg migrationTypes: MigrationType): List<AppliedMigration> {
+        return appliedMigrations().filter { migrationTypes.contains(it.type!!) }
+    }
+
+    /**
+     * Read the applied migrations rows from the schema migration version table.
+     *
+     * @return The applied migrations.
+     */
+    private fun readAppliedMigrations(): List<AppliedMigration> {
         val results = session.execute(findAppliedMigrationsQuery)
         // TODO: Refactor to idiomatic Kotlin collections method
         val resultsList = ArrayList<AppliedMigration>()
@@ -163,48 +378,8 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
             )
         }
 
-        // NOTE: Order by `version_rank` not necessary here, as it eventually gets saved in TreeMap
-        //       that uses natural ordering
-        return resultsList
-    }
-
-    /**
-     * Retrieve the applied migrations from the metadata table.
-     *
-     * @param migrationTypes The migration types to find.
-     * @return The applied migrations.
-     */
-    open fun findAppliedMigrations(vararg migrationTypes: MigrationType): List<AppliedMigration> {
-        // GUARD: Return empty array if tables does not exists
-        if (!tablesExist()) return ArrayList()
-
-        val results = session.execute(findAppliedMigrationsQuery)
-        // TODO: Refactor to idiomatic Kotlin collections method
-        val resultsList = ArrayList<AppliedMigration>()
-        val migTypeList = Arrays.asList(*migrationTypes)
-        for (row in results) {
-            val migType = MigrationType.valueOf(row.getString("type"))
-            if (migTypeList.contains(migType)) {
-                resultsList.add(
-                        AppliedMigration(
-                                row.getInt("version_rank"),
-                                row.getInt("installed_rank"),
-                                MigrationVersion.fromVersion(row.getString("version")),
-                                row.getString("description"),
-                                migType,
-                                row.getString("script"),
-                                row.getInt("checksum"),
-                                row.getTimestamp("installed_on"),
-                                row.getString("installed_by"),
-                                row.getInt("execution_time"),
-                                row.getBool("success")
-                        )
-                )
-            }
-        }
-
-        // NOTE: Order by `version_rank` not necessary here, as it eventually gets saved in TreeMap
-        //       that uses natural ordering
+        // NOTE: Order by `version_rank` not necessary here, as the applied migrations get sorted by version
+        //       when merged with the available migrations
         return resultsList
     }
 
@@ -221,7 +396,7 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
 
         // TODO: Refactor to idiomatic Kotlin collections method
         val filteredMigrations = ArrayList<AppliedMigration>()
-        val appliedMigrations = findAppliedMigrations()
+        val appliedMigrations = appliedMigrations()
         for (appliedMigration in appliedMigrations) {
             if (appliedMigration.type != MigrationType.BASELINE) {
                 filteredMigrations.add(appliedMigration)
@@ -290,39 +465,159 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     }
 
     /**
-     * Calculate the rank for this new version about to be inserted.
+     * Claims an installed rank for the new migration to be inserted, with a lightweight transaction on the installed
+     * rank claims table (`INSERT ... IF NOT EXISTS`). When the installed rank has already been claimed by another
+     * migration run, the following installed rank is claimed instead.
+     * The claim is always made synchronously, and an installed rank is left unused if the record cannot be inserted.
      *
-     * @param version The version to calculated for.
-     * @return The rank.
+     * @param firstInstalledRank The first installed rank to claim, following the highest installed rank recorded.
+     * @param appliedMigration The applied migration.
+     * @return The claimed installed rank.
      */
-    private fun calculateVersionRank(version: MigrationVersion): Int {
-        val versionRows = session.execute(findVersionRankQuery)
+    private fun claimInstalledRank(firstInstalledRank: Int, appliedMigration: AppliedMigration): Int {
+        createRankClaimTableIfNotExist()
+
+        var installedRank = firstInstalledRank
+        while (true) {
+            val statement = insertRankClaimIfNotExistsStmt.bind(installedRank, appliedMigration.version.toString(), rankClaimId)
+            // NOTE: The claim is a lightweight transaction, a retried claim is detected when checking the result
+            statement.setIdempotent(true)
+
+            val result = session.execute(statement)
+            if (result.wasApplied() || result.one().getUUID("claim_id") == rankClaimId) {
+                return installedRank
+            }
 
-        // TODO: Refactor to idiomatic Kotlin collections method
-        val migrationVersions = ArrayList<MigrationVersion>()
-        val migrationMetaHolders = HashMap<String, MigrationMetaHolder>()
-        for (versionRow in versionRows) {
-            migrationVersions.add(MigrationVersion.fromVersion(versionRow.getString("version")))
-            migrationMetaHolders.put(
-                    versionRow.getString("version"),
-                    MigrationMetaHolder(versionRow.getInt("version_rank"))
-            )
+            LOG.debug("Installed rank $installedRank in schema version table $tableName already claimed (concurrent migration?)")
+            installedRank++
         }
+    }
+
+    /**
+     * Create the installed rank claims table if it does not exist, once for the lifetime of this DAO.
+     * The table is created on first use rather than with the schema migration version tables, as these may have been
+     * created before conditional installed rank allocation was used.
+     */
+    private fun createRankClaimTableIfNotExist() {
+        // GUARD: Skip table creation if already created
+        if (rankClaimTableCreated) return
+
+        session.execute(createRankClaimTableStmt)
+        rankClaimTableCreated = true
+    }
 
-        if (migrationVersions.size == 0) {
-            return 1;
+    /**
+     * Check the result of an applied migration record insert. A failed record of the same version is replaced, as
+     * unconditional inserts (see [InstalledRankAllocation.COUNTER]) do.
+     *
+     * @param result The insert result.
+     * @param installedRank The installed rank allocated for the applied migration.
+     * @param appliedMigration The applied migration.
+     * @throws CassandraMigrationException when the version has been recorded by another migration run.
+     */
+    private fun checkInsertResult(result: ResultSet, installedRank: Int, appliedMigration: AppliedMigration) {
+        // NOTE: Only conditional inserts may not be applied
+        if (result.wasApplied()) return
+
+        val existing = result.one()
+        val existingInstalledRank = existing.getInt("installed_rank")
+        if (!existing.getBool("success") && existingInstalledRank != installedRank) {
+            replaceFailedRecord(existingInstalledRank, installedRank, appliedMigration)
+        } else {
+            checkConflictingRecord(existing, installedRank, appliedMigration)
         }
+    }
 
-        Collections.sort(migrationVersions)
+    /**
+     * Replace the failed record of the applied migration version, with a lightweight transaction (`UPDATE ... IF`)
+     * conditional on the failed record being the one read.
+     *
+     * @param failedInstalledRank The installed rank of the failed record.
+     * @param installedRank The installed rank allocated for the applied migration.
+     * @param appliedMigration The applied migration.
+     * @throws CassandraMigrationException when the failed record has been replaced by another migration run.
+     */
+    private fun replaceFailedRecord(failedInstalledRank: Int, installedRank: Int, appliedMigration: AppliedMigration) {
+        LOG.info("Replacing failed migration version ${appliedMigration.version} (installed rank $failedInstalledRank) in schema version table $tableName")
 
-        // TODO: Refactor for loop with idiomatic Kotlin collection methods
-        for (i in migrationVersions.indices) {
-            if (version.compareTo(migrationVersions[i]) < 0) {
-                return i + 1
+        val statement = replaceFailedSchemaMigrationRecordStmt.bind(
+                installedRank,
+                appliedMigration.description,
+                appliedMigration.type!!.name,
+                appliedMigration.script,
+                appliedMigration.checksum,
+                appliedMigration.installedBy,
+                appliedMigration.executionTime,
+                appliedMigration.isSuccess,
+                appliedMigration.version.toString(),
+                failedInstalledRank
+        )
+        // NOTE: The replacement is a lightweight transaction, a retried replacement is detected when checking the result
+        statement.setIdempotent(true)
+
+        val result = session.execute(statement)
+        if (!result.wasApplied()) {
+            val existingInstalledRank = result.one().getInt("installed_rank")
+            if (existingInstalledRank != installedRank) {
+                throw CassandraMigrationException(
+                        "Unable to replace failed migration version ${appliedMigration.version} in schema version table $tableName," +
+                                " it has already been recorded with installed rank $existingInstalledRank (concurrent migration?)"
+                )
             }
         }
+    }
+
+    /**
+     * Check the existing record returned by a conditional insert that was not applied.
+     * The insert is only considered successful if the existing record is the one being inserted (i.e. the insert
+     * was retried after having been applied).
+     *
+     * @param existing The existing schema migration version record.
+     * @param installedRank The installed rank allocated for the applied migration.
+     * @param appliedMigration The applied migration.
+     * @throws CassandraMigrationException when the version has been recorded by another migration run.
+     */
+    private fun checkConflictingRecord(existing: Row, installedRank: Int, appliedMigration: AppliedMigration) {
+        val existingInstalledRank = existing.getInt("installed_rank")
+        val existingChecksum = if (existing.isNull("checksum")) null else existing.getInt("checksum")
+
+        if (existingInstalledRank == installedRank
+                && existingChecksum == appliedMigration.checksum
+                && existing.getBool("success") == appliedMigration.isSuccess) {
+            LOG.debug("Schema version table $tableName already records version ${appliedMigration.version} with installed rank $installedRank")
+            return
+        }
+
+        throw CassandraMigrationException(
+                "Unable to record migration version ${appliedMigration.version} in schema version table $tableName," +
+                        " it has already been recorded with installed rank $existingInstalledRank (concurrent migration?)"
+        )
+    }
+
+    /**
+     * Get the applied migrations from the in-memory ledger, reading them from the schema migration version table
+     * only if the ledger has not been loaded yet.
+     *
+     * @return The applied migrations.
+     */
+    private fun appliedMigrations(): List<AppliedMigration> {
+        return ledger?.appliedMigrations ?: findAppliedMigrations()
+    }
+
+    /**
+     * Load the in-memory applied migrations ledger, creating the schema migration version tables if they do not exist.
+     * The schema migration version table is only read the first time.
+     *
+     * @return The applied migrations ledger.
+     */
+    private fun loadLedger(): AppliedMigrationLedger {
+        return ledger ?: let {
+            createTablesIfNotExist()
 
-        return migrationVersions.size + 1
+            val loadedLedger = AppliedMigrationLedger(readAppliedMigrations())
+            ledger = loadedLedger
+            loadedLedger
+        }
     }
 
     /**
@@ -385,6 +680,8 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     // Notes  :
     //   Can be reverted (to use count) once the affected Cassandra version has been superseded by another major
     //   version (e.g. 4.x).
+    //   Table existence is now checked against the cluster metadata (or `system_schema.tables`) first, and these
+    //   queries are only used as a fallback. Only a single row is needed to establish the tables exist.
     // ~~~~~~
 
     /**
@@ -397,6 +694,7 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
                 .select()
                 //.countAll()
                 .from(keyspaceConfig.name, tableName)
+                .limit(1)
         query.consistencyLevel = this.consistencyLevel
         return query
     }
@@ -411,10 +709,26 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
                 .select()
                 //.countAll()
                 .from(keyspaceConfig.name, tableName + COUNTS_TABLE_NAME_SUFFIX)
+                .limit(1)
         query.consistencyLevel = this.consistencyLevel
         return query
     }
 
+    /**
+     * Schema Migration tables lookup in `system_schema.tables` CQL query builder.
+     *
+     * @return Schema Migration tables lookup query.
+     */
+    private fun buildFindSchemaMigrationTablesQuery(): Select {
+        val query = QueryBuilder
+                .select("table_name")
+                .from("system_schema", "tables")
+        query.where(eq("keyspace_name", keyspaceConfig.name))
+                .and(QueryBuilder.`in`("table_name", tableName, tableName + COUNTS_TABLE_NAME_SUFFIX))
+        query.consistencyLevel = ConsistencyLevel.ONE
+        return query
+    }
+
     /**
      * Insert Schema Migration record CQL statement builder.
      *
@@ -441,16 +755,43 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
         return stmt
     }
 
+    /**
+     * Conditional insert Schema Migration record CQL statement builder.
+     *
+     * @return Schema Migration record conditional insert statement.
+     */
+    private fun buildInsertSchemaMigrationRecordIfNotExistsStmt(): PreparedStatement {
+        val stmt = this.cachePs.prepare(
+                """
+                 | INSERT INTO "${keyspaceConfig.name}"."${tableName}"
+                 | (
+                 |   version_rank, installed_rank, version,
+                 |   description, type, script,
+                 |   checksum, installed_on, installed_by,
+                 |   execution_time, success
+                 | ) VALUES (
+                 |   ?, ?, ?,
+                 |   ?, ?, ?,
+                 |   ?, dateOf(now()), ?,
+                 |   ?, ?
+                 | ) IF NOT EXISTS;
+                """.trimMargin()
+        )
+        stmt.consistencyLevel = this.consistencyLevel
+        return stmt
+    }
+
     /**
      * Bind Schema Migration table insert CQL statement with the given params.
      *
+     * @param insertStmt The Schema Migration record insert statement to bind.
      * @param versionRank The current version rank.
      * @param installedRank The current installed rank.
      * @param appliedMigration The current applied migration.
      * @return Bound Schema Migration record insert statement.
      */
-    private fun boundInsertSchemaMigrationRecordStmt(versionRank: Int, installedRank: Int, appliedMigration: AppliedMigration): BoundStatement {
-        return insertSchemaMigrationTableStmt.bind(
+    private fun boundInsertSchemaMigrationRecordStmt(insertStmt: PreparedStatement, versionRank: Int, installedRank: Int, appliedMigration: AppliedMigration): BoundStatement {
+        return insertStmt.bind(
                 versionRank,
                 installedRank,
                 appliedMigration.version.toString(),
@@ -522,32 +863,79 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     }
 
     /**
-     * Find Schema Migration table version rank CQL query.
+     * Update Schema Migration table version rank CQL query.
      *
-     * @return Schema Migration table version rank select query.
+     * @return Schema Migration table version rank update query.
      */
-    private fun buildFindVersionRankQuery(): Select {
-        val query = QueryBuilder
-                .select()
-                .column("version")
-                .column("version_rank")
-                .from(keyspaceConfig.name, tableName)
+    private fun buildUpdateVersionRankStmt(): PreparedStatement {
+        val stmt = this.cachePs.prepare(
+                """
+                 | UPDATE "${keyspaceConfig.name}"."${tableName}"
+                 |    SET version_rank = ?
+                 |  WHERE version = ?;
+                """.trimMargin()
+        )
+        stmt.consistencyLevel = this.consistencyLevel
+        return stmt
+    }
 
-        query.consistencyLevel = this.consistencyLevel
-        return query
+    /**
+     * Schema Migration installed rank claims table CQL statement builder.
+     *
+     * @return Schema Migration installed rank claims table create statement.
+     */
+    private fun buildCreateRankClaimTableStmt(): SimpleStatement {
+        val stmt = SimpleStatement(
+                """
+                 | CREATE TABLE IF NOT EXISTS "${keyspaceConfig.name}"."${tableName}${RANKS_TABLE_NAME_SUFFIX}"
+                 | (
+                 |   installed_rank INT,
+                 |   version        TEXT,
+                 |   claim_id       UUID,
+                 |   PRIMARY KEY (installed_rank)
+                 | );
+                """.trimMargin()
+        )
+        stmt.consistencyLevel = this.consistencyLevel
+        return stmt
     }
 
     /**
-     * Update Schema Migration table version rank CQL query.
+     * Conditional insert Schema Migration installed rank claim CQL statement builder.
      *
-     * @return Schema Migration table version rank update query.
+     * @return Schema Migration installed rank claim conditional insert statement.
      */
-    private fun buildUpdateVersionRankStmt(): PreparedStatement {
+    private fun buildInsertRankClaimIfNotExistsStmt(): PreparedStatement {
+        val stmt = this.cachePs.prepare(
+                """
+                 | INSERT INTO "${keyspaceConfig.name}"."${tableName}${RANKS_TABLE_NAME_SUFFIX}"
+                 | (
+                 |   installed_rank, version, claim_id
+                 | ) VALUES (
+                 |   ?, ?, ?
+                 | ) IF NOT EXISTS;
+                """.trimMargin()
+        )
+        stmt.consistencyLevel = this.consistencyLevel
+        return stmt
+    }
+
+    /**
+     * Conditional replacement of a failed Schema Migration record CQL statement builder.
+     * The version rank of the failed record is kept.
+     *
+     * @return Schema Migration failed record conditional update statement.
+     */
+    private fun buildReplaceFailedSchemaMigrationRecordStmt(): PreparedStatement {
         val stmt = this.cachePs.prepare(
                 """
                  | UPDATE "${keyspaceConfig.name}"."${tableName}"
-                 |    SET version_rank = ?
-                 |  WHERE version = ?;
+                 |    SET installed_rank = ?,
+                 |        description = ?, type = ?, script = ?,
+                 |        checksum = ?, installed_on = dateOf(now()), installed_by = ?,
+                 |        execution_time = ?, success = ?
+                 |  WHERE version = ?
+                 |     IF success = false AND installed_rank = ?;
                 """.trimMargin()
         )
         stmt.consistencyLevel = this.consistencyLevel
@@ -566,11 +954,13 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     }
 
     /**
-     * Schema migration (transient) metadata.
+     * Asynchronously added applied migration record.
      *
-     * @param versionRank The applied migrations version rank.
+     * @param future The record insert result future.
+     * @param installedRank The installed rank allocated for the applied migration.
+     * @param appliedMigration The applied migration.
      */
-    internal inner class MigrationMetaHolder(val versionRank: Int)
+    private class PendingWrite(val future: ResultSetFuture, val installedRank: Int, val appliedMigration: AppliedMigration)
 
     /**
      * SchemaVersionDAO companion object.
@@ -578,6 +968,7 @@ open class SchemaVersionDAO(private val session: Session, val keyspaceConfig: Ke
     companion object {
         private val LOG = LogFactory.getLog(SchemaVersionDAO::class.java)
         private val COUNTS_TABLE_NAME_SUFFIX = "_counts"
+        private val RANKS_TABLE_NAME_SUFFIX = "_ranks"
     }
 
 }
@@ -97,51 +97,58 @@ class MigrationInfoImpl(
 
     /**
      * The state of the migration (PENDING, SUCCESS, ...)
+     * Computed once, on first access, as the migrations and the context no longer change once the info is created.
      */
-    override val state: MigrationState
-        get() {
-            if (appliedMigration == null) {
-                if (resolvedMigration!!.version!!.compareTo(context.baseline) < 0) {
-                    return MigrationState.BELOW_BASELINE
-                }
-                if (resolvedMigration.version!!.compareTo(context.target) > 0) {
-                    return MigrationState.ABOVE_TARGET
-                }
-                if (resolvedMigration.version!!.compareTo(context.lastApplied) < 0 && !context.outOfOrder) {
-                    return MigrationState.IGNORED
-                }
-                return MigrationState.PENDING
+    override val state: MigrationState by lazy { computeState() }
+
+    /**
+     * Computes the state of the migration.
+     *
+     * @return The state of the migration.
+     */
+    private fun computeState(): MigrationState {
+        if (appliedMigration == null) {
+            if (resolvedMigration!!.version!!.compareTo(context.baseline) < 0) {
+                return MigrationState.BELOW_BASELINE
+            }
+            if (resolvedMigration.version!!.compareTo(context.target) > 0) {
+                return MigrationState.ABOVE_TARGET
+            }
+            if (resolvedMigration.version!!.compareTo(context.lastApplied) < 0 && !context.outOfOrder) {
+                return MigrationState.IGNORED
             }
+            return MigrationState.PENDING
+        }
 
-            if (resolvedMigration == null) {
-                if (MigrationType.SCHEMA === appliedMigration.type) {
-                    return MigrationState.SUCCESS
-                }
-                if (MigrationType.BASELINE === appliedMigration.type) {
-                    return MigrationState.BASELINE
-                }
-                if (version.compareTo(context.lastResolved) < 0) {
-                    if (appliedMigration.isSuccess) {
-                        return MigrationState.MISSING_SUCCESS
-                    }
-                    return MigrationState.MISSING_FAILED
+        if (resolvedMigration == null) {
+            if (MigrationType.SCHEMA === appliedMigration.type) {
+                return MigrationState.SUCCESS
+            }
+            if (MigrationType.BASELINE === appliedMigration.type) {
+                return MigrationState.BASELINE
+            }
+            if (version.compareTo(context.lastResolved) < 0) {
+                if (appliedMigration.isSuccess) {
+                    return MigrationState.MISSING_SUCCESS
                 }
-                if (version.compareTo(context.lastResolved) > 0) {
-                    if (appliedMigration.isSuccess) {
-                        return MigrationState.FUTURE_SUCCESS
-                    }
-                    return MigrationState.FUTURE_FAILED
+                return MigrationState.MISSING_FAILED
+            }
+            if (version.compareTo(context.lastResolved) > 0) {
+                if (appliedMigration.isSuccess) {
+                    return MigrationState.FUTURE_SUCCESS
                 }
+                return MigrationState.FUTURE_FAILED
             }
+        }
 
-            if (appliedMigration.isSuccess) {
-                if (appliedMigration.versionRank == appliedMigration.installedRank) {
-                    return MigrationState.SUCCESS
-                }
-                return MigrationState.OUT_OF_ORDER
+        if (appliedMigration.isSuccess) {
+            if (appliedMigration.versionRank == appliedMigration.installedRank) {
+                return MigrationState.SUCCESS
             }
-            return MigrationState.FAILED
+            return MigrationState.OUT_OF_ORDER
         }
+        return MigrationState.FAILED
+    }
 
     /**
      * The timestamp when this migration was installed. (Only for applied migrations)
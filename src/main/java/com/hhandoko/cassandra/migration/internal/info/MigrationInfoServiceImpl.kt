@@ -50,6 +50,11 @@ class MigrationInfoServiceImpl(
      */
     private var migrationInfos: List<MigrationInfoImpl> = emptyList()
 
+    /**
+     * The migration infos calculated at the last refresh, partitioned by state.
+     */
+    private var buckets = StateBuckets(emptyList())
+
     /**
      * Refreshes the info about all known migrations from both the classpath and the DB.
      */
@@ -57,7 +62,19 @@ class MigrationInfoServiceImpl(
         val availableMigrations = migrationResolver.resolveMigrations()
         val appliedMigrations = schemaVersionDAO.findAppliedMigrations()
 
+        refresh(availableMigrations, appliedMigrations)
+    }
+
+    /**
+     * Refreshes the info about all known migrations from the given (already loaded) migrations,
+     * without going back to the classpath or the DB.
+     *
+     * @param availableMigrations The available migrations.
+     * @param appliedMigrations The applied migrations.
+     */
+    fun refresh(availableMigrations: Collection<ResolvedMigration>, appliedMigrations: List<AppliedMigration>) {
         migrationInfos = mergeAvailableAndAppliedMigrations(availableMigrations, appliedMigrations)
+        buckets = StateBuckets(migrationInfos)
 
         if (MigrationVersion.CURRENT === target) {
             target = current()?.version
@@ -76,18 +93,19 @@ class MigrationInfoServiceImpl(
 
     /**
      * Retrieves the full set of infos about the migrations.
+     * The arrays returned by this service are computed once per refresh and shared, they must not be modified.
      *
      * @return The migrations.
      */
     override fun all(): Array<MigrationInfo> {
-        return migrationInfos.toTypedArray()
+        return buckets.all
     }
 
     /**
      * @return Current migration to be run.
      */
     override fun current(): MigrationInfo? {
-        return migrationInfos.lastOrNull { it.state.isApplied }
+        return buckets.current
     }
 
     /**
@@ -96,7 +114,7 @@ class MigrationInfoServiceImpl(
      * @return The pending migrations. An empty array if none.
      */
     override fun pending(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state === MigrationState.PENDING }.orEmpty().toTypedArray()
+        return buckets.pending
     }
 
     /**
@@ -105,7 +123,7 @@ class MigrationInfoServiceImpl(
      * @return The applied migrations. An empty array if none.
      */
     override fun applied(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state.isApplied }.orEmpty().toTypedArray()
+        return buckets.applied
     }
 
     /**
@@ -114,7 +132,7 @@ class MigrationInfoServiceImpl(
      * @return The resolved migrations. An empty array if none.
      */
     override fun resolved(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state.isResolved }.orEmpty().toTypedArray()
+        return buckets.resolved
     }
 
     /**
@@ -123,7 +141,7 @@ class MigrationInfoServiceImpl(
      * @return The failed migrations. An empty array if none.
      */
     override fun failed(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state.isFailed }.orEmpty().toTypedArray()
+        return buckets.failed
     }
 
     /**
@@ -132,7 +150,7 @@ class MigrationInfoServiceImpl(
      * @return The future migrations. An empty array if none.
      */
     override fun future(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state === MigrationState.FUTURE_SUCCESS }.orEmpty().toTypedArray()
+        return buckets.future
     }
 
     /**
@@ -141,7 +159,7 @@ class MigrationInfoServiceImpl(
      * @return The out of order migrations. An empty array if none.
      */
     override fun outOfOrder(): Array<MigrationInfo> {
-        return migrationInfos.filter { it.state === MigrationState.OUT_OF_ORDER }.orEmpty().toTypedArray()
+        return buckets.outOfOrder
     }
 
     /**
@@ -157,16 +175,13 @@ class MigrationInfoServiceImpl(
         context.pendingOrFuture = pendingOrFuture
         context.target = target
 
-        val resolvedMigrationsMap = TreeMap<MigrationVersion, ResolvedMigration>()
         for (resolvedMigration in resolvedMigrations) {
             val version = resolvedMigration.version
             if (version!!.compareTo(context.lastResolved) > 0) {
                 context.lastResolved = version
             }
-            resolvedMigrationsMap.put(version, resolvedMigration)
         }
 
-        val appliedMigrationsMap = TreeMap<MigrationVersion, AppliedMigration>()
         for (appliedMigration in appliedMigrations) {
             val version = appliedMigration.version
             if (version!!.compareTo(context.lastApplied) > 0) {
@@ -178,23 +193,131 @@ class MigrationInfoServiceImpl(
             if (appliedMigration.type === MigrationType.BASELINE) {
                 context.baseline = version
             }
-            appliedMigrationsMap.put(version, appliedMigration)
         }
 
-        val allVersions = HashSet<MigrationVersion>()
-        allVersions.addAll(resolvedMigrationsMap.keys)
-        allVersions.addAll(appliedMigrationsMap.keys)
+        // Merge-join both migrations sorted by version, the last migration of each version wins
+        val resolved = sortedByVersion(resolvedMigrations) { it.version!! }
+        val applied = sortedByVersion(appliedMigrations) { it.version!! }
+
+        val migrationInfos = ArrayList<MigrationInfoImpl>(Math.max(resolved.size, applied.size))
+        var i = 0
+        var j = 0
+        while (i < resolved.size || j < applied.size) {
+            val compared = when {
+                i == resolved.size -> 1
+                j == applied.size  -> -1
+                else               -> resolved[i].version!!.compareTo(applied[j].version)
+            }
+
+            var resolvedMigration: ResolvedMigration? = null
+            if (compared <= 0) {
+                resolvedMigration = resolved[i++]
+                while (i < resolved.size && resolved[i].version!!.compareTo(resolvedMigration!!.version) == 0) {
+                    resolvedMigration = resolved[i++]
+                }
+            }
+
+            var appliedMigration: AppliedMigration? = null
+            if (compared >= 0) {
+                appliedMigration = applied[j++]
+                while (j < applied.size && applied[j].version!!.compareTo(appliedMigration!!.version) == 0) {
+                    appliedMigration = applied[j++]
+                }
+            }
 
-        val migrationInfos = ArrayList<MigrationInfoImpl>()
-        for (version in allVersions) {
-            val resolvedMigration = resolvedMigrationsMap[version]
-            val appliedMigration = appliedMigrationsMap[version]
             migrationInfos.add(MigrationInfoImpl(resolvedMigration, appliedMigration, context))
         }
 
-        Collections.sort(migrationInfos)
-
         return migrationInfos
     }
 
+    /**
+     * MigrationInfoServiceImpl companion object.
+     */
+    companion object {
+
+        /**
+         * Sorts these migrations by version, unless they are already sorted (e.g. the resolved migrations).
+         * The sort is stable, keeping migrations of the same version in their original order.
+         *
+         * @param migrations The migrations to sort.
+         * @param version The version of a migration.
+         * @return The migrations sorted by version.
+         */
+        private fun <T> sortedByVersion(migrations: Collection<T>, version: (T) -> MigrationVersion): List<T> {
+            val list = migrations as? List<T> ?: ArrayList(migrations)
+            for (k in 1..list.size - 1) {
+                if (version(list[k - 1]).compareTo(version(list[k])) > 0) {
+                    return list.sortedWith(Comparator { o1, o2 -> version(o1).compareTo(version(o2)) })
+                }
+            }
+            return list
+        }
+
+    }
+
+    /**
+     * Migration infos partitioned by state in a single pass, each migration state being computed once.
+     *
+     * @param migrationInfos The migration infos, sorted by version.
+     */
+    private class StateBuckets(migrationInfos: List<MigrationInfoImpl>) {
+
+        /** All migrations. */
+        val all: Array<MigrationInfo>
+
+        /** The pending migrations. */
+        val pending: Array<MigrationInfo>
+
+        /** The migrations applied on the DB. */
+        val applied: Array<MigrationInfo>
+
+        /** The migrations resolved on the classpath. */
+        val resolved: Array<MigrationInfo>
+
+        /** The migrations that failed. */
+        val failed: Array<MigrationInfo>
+
+        /** The future migrations applied to the DB. */
+        val future: Array<MigrationInfo>
+
+        /** The out of order migrations applied to the DB. */
+        val outOfOrder: Array<MigrationInfo>
+
+        /** The latest applied migration. */
+        val current: MigrationInfo?
+
+        /**
+         * StateBuckets initialization.
+         */
+        init {
+            val pending = ArrayList<MigrationInfo>()
+            val applied = ArrayList<MigrationInfo>()
+            val resolved = ArrayList<MigrationInfo>()
+            val failed = ArrayList<MigrationInfo>()
+            val future = ArrayList<MigrationInfo>()
+            val outOfOrder = ArrayList<MigrationInfo>()
+
+            for (migrationInfo in migrationInfos) {
+                val state = migrationInfo.state
+                if (state === MigrationState.PENDING) pending.add(migrationInfo)
+                if (state.isApplied) applied.add(migrationInfo)
+                if (state.isResolved) resolved.add(migrationInfo)
+                if (state.isFailed) failed.add(migrationInfo)
+                if (state === MigrationState.FUTURE_SUCCESS) future.add(migrationInfo)
+                if (state === MigrationState.OUT_OF_ORDER) outOfOrder.add(migrationInfo)
+            }
+
+            this.all = migrationInfos.toTypedArray()
+            this.pending = pending.toTypedArray()
+            this.applied = applied.toTypedArray()
+            this.resolved = resolved.toTypedArray()
+            this.failed = failed.toTypedArray()
+            this.future = future.toTypedArray()
+            this.outOfOrder = outOfOrder.toTypedArray()
+            this.current = applied.lastOrNull()
+        }
+
+    }
+
 }
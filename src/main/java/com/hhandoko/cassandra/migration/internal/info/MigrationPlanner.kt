@@ -0,0 +1,158 @@
+/**
+ * File     : MigrationPlanner.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.info
+
+import com.hhandoko.cassandra.migration.api.MigrationInfoService
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
+import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
+import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import java.util.*
+
+/**
+ * Single-pass migration planner for a migrate run.
+ *
+ * The available migrations are resolved, and the applied migrations are read, only once. The ordered list of pending
+ * migrations is computed up front, and the in-memory view is updated as each migration is recorded. The schema
+ * version table is only re-read when a concurrent writer is detected, i.e. when the installed rank allocated for a
+ * recorded migration is not the one following the previously allocated rank.
+ *
+ * @param migrationResolver The migration resolver for available migrations.
+ * @param schemaVersionDAO The schema version table DAO implementation.
+ * @param target The target version up to which to plan the migrations.
+ * @param outOfOrder Allows migrations to be run "out of order".
+ */
+class MigrationPlanner(
+    private val migrationResolver: MigrationResolver,
+    private val schemaVersionDAO: SchemaVersionDAO,
+    private val target: MigrationVersion,
+    private val outOfOrder: Boolean
+) {
+
+    /**
+     * The available migrations, resolved once per run.
+     */
+    private val availableMigrations: Collection<ResolvedMigration> by lazy { migrationResolver.resolveMigrations() }
+
+    /**
+     * The applied migrations, as last read from the DB plus the ones recorded since.
+     */
+    private val appliedMigrations = ArrayList<AppliedMigration>()
+
+    /**
+     * The migrations still to be applied, in order.
+     */
+    private val pendingMigrations = ArrayDeque<MigrationInfoImpl>()
+
+    /**
+     * The info service reflecting the in-memory view, or `null` if it needs to be rebuilt.
+     */
+    private var infoService: MigrationInfoServiceImpl? = null
+
+    /**
+     * The installed rank expected for the next recorded migration, or `null` if not yet known.
+     */
+    private var expectedInstalledRank: Int? = null
+
+    /**
+     * The current schema version, i.e. the latest applied migration version.
+     */
+    var currentVersion: MigrationVersion = MigrationVersion.CURRENT
+        private set
+
+    /**
+     * The info about all known migrations, reflecting the migrations recorded so far.
+     */
+    val info: MigrationInfoService
+        get() {
+            return infoService ?: createInfoService().let {
+                infoService = it
+                it
+            }
+        }
+
+    /**
+     * The next migration to apply, or `null` if there are no more pending migrations.
+     */
+    val nextPending: MigrationInfoImpl?
+        get() = pendingMigrations.peekFirst()
+
+    /**
+     * Reads the applied migrations from the DB, and (re)computes the pending migrations plan.
+     */
+    fun refresh() {
+        appliedMigrations.clear()
+        appliedMigrations.addAll(schemaVersionDAO.findAppliedMigrations())
+
+        val service = createInfoService()
+        pendingMigrations.clear()
+        service.pending().forEach { pendingMigrations.add(it as MigrationInfoImpl) }
+        currentVersion = service.current()?.version ?: MigrationVersion.CURRENT
+        infoService = service
+    }
+
+    /**
+     * Records the given applied migration in the in-memory view.
+     *
+     * @param appliedMigration The applied migration, as recorded in the schema version table.
+     * @return `true` if a concurrent writer was detected, and the plan has been re-read from the DB.
+     */
+    fun recordApplied(appliedMigration: AppliedMigration): Boolean {
+        val expectedRank = expectedInstalledRank ?: (appliedMigrations.map { it.installedRank ?: 0 }.max() ?: 0) + 1
+        val installedRank = appliedMigration.installedRank
+        expectedInstalledRank = installedRank?.let { it + 1 }
+
+        if (installedRank != null && installedRank != expectedRank) {
+            LOG.warn("Schema version table ${schemaVersionDAO.tableName} was updated concurrently (expected installed rank $expectedRank, got $installedRank), re-reading applied migrations")
+            refresh()
+            return true
+        }
+
+        appliedMigrations.add(appliedMigration)
+        if (pendingMigrations.peekFirst()?.version == appliedMigration.version) {
+            pendingMigrations.pollFirst()
+        }
+        if (appliedMigration.version!!.compareTo(currentVersion) > 0) {
+            currentVersion = appliedMigration.version!!
+        }
+        infoService = null
+
+        return false
+    }
+
+    /**
+     * Creates an info service from the in-memory view.
+     *
+     * @return The info service.
+     */
+    private fun createInfoService(): MigrationInfoServiceImpl {
+        val service = MigrationInfoServiceImpl(migrationResolver, schemaVersionDAO, target, outOfOrder, true)
+        service.refresh(availableMigrations, appliedMigrations)
+        return service
+    }
+
+    /**
+     * MigrationPlanner companion object.
+     */
+    companion object {
+        private val LOG = LogFactory.getLog(MigrationPlanner::class.java)
+    }
+
+}
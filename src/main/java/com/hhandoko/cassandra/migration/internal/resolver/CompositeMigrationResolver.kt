@@ -21,19 +21,39 @@ package com.hhandoko.cassandra.migration.internal.resolver
 import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
 import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
 import com.hhandoko.cassandra.migration.internal.resolver.cql.CqlMigrationResolver
 import com.hhandoko.cassandra.migration.internal.resolver.java.JavaMigrationResolver
+import com.hhandoko.cassandra.migration.internal.util.ClassLoaderCache
+import com.hhandoko.cassandra.migration.internal.util.Location
 import com.hhandoko.cassandra.migration.internal.util.Locations
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
 
 /**
  * Facility for retrieving and sorting the available migrations from the classpath through the various migration
  * resolvers.
  *
+ * Classpath locations shipping a migration index (see `MigrationIndexGenerator`) are resolved from their index, other
+ * locations are scanned. The migration indexes (and the CQL migrations scanned from classpath locations) are shared by
+ * all the resolvers using the same ClassLoader, while the migrations resolved from them are only retained by each
+ * resolver.
+ *
  * @param classLoader The ClassLoader for loading migrations on the classpath.
  * @param locations The locations where migrations are located.
  * @param encoding The CQL migrations encoding.
  * @param timeout The CQL migrations read timeout duration in seconds.
+ * @param asyncWindow The maximum number of CQL migrations DML statements in flight.
+ * @param schemaAgreement The schema agreement barrier to wait on after each CQL migrations schema change.
+ * @param statementCache The cache of parsed CQL migrations statement boundaries.
+ * @param contentBudget The budget of CQL migrations content retained between checksum calculation and execution.
+ * @param parallelism The size of the single pool running the built-in migration resolvers concurrently, and walking
+ *                    their filesystem directories. Custom migration resolvers are run on the calling thread.
  * @param customMigrationResolvers Custom Migration Resolvers.
  */
 class CompositeMigrationResolver(
@@ -41,6 +61,11 @@ class CompositeMigrationResolver(
     locations: Locations,
     encoding: String,
     timeout: Int,
+    asyncWindow: Int = 1,
+    schemaAgreement: SchemaAgreement? = null,
+    statementCache: CqlStatementCache? = null,
+    contentBudget: ResourceContent.Budget? = null,
+    private val parallelism: Int = 1,
     vararg customMigrationResolvers: MigrationResolver
 ) : MigrationResolver {
 
@@ -49,6 +74,11 @@ class CompositeMigrationResolver(
      */
     private val migrationResolvers = ArrayList<MigrationResolver>()
 
+    /**
+     * The custom migration resolvers, run on the calling thread.
+     */
+    private val customMigrationResolvers = Arrays.asList(*customMigrationResolvers)
+
     /**
      * The available migrations, sorted by version, newest first. An empty list is returned when no migrations can be
      * found.
@@ -59,12 +89,24 @@ class CompositeMigrationResolver(
      * CompositeMigrationResolver initialization.
      */
     init {
-        locations.getLocations().forEach {
-            migrationResolvers.add(CqlMigrationResolver(classLoader, it, encoding, timeout))
-            migrationResolvers.add(JavaMigrationResolver(classLoader, it))
+        // Share a single scan context, so that the classpath is only enumerated once for all locations
+        val scanContext = ScanContext()
+
+        locations.getLocations().forEach { location ->
+            // Use the build-time migration index of the location if present, scan the location otherwise
+            val index = INDEXES.getOrPut(classLoader, location) { MigrationIndex.load(classLoader, location) }
+            if (index != null) {
+                migrationResolvers.add(IndexedMigrationResolver(
+                        classLoader, location, index, encoding, timeout, asyncWindow, schemaAgreement, statementCache
+                ))
+            } else {
+                migrationResolvers.add(CqlMigrationResolver(
+                        classLoader, location, encoding, timeout, asyncWindow, schemaAgreement, statementCache,
+                        contentBudget, parallelism, scanContext
+                ))
+                migrationResolvers.add(JavaMigrationResolver(classLoader, location, scanContext))
+            }
         }
-
-        migrationResolvers.addAll(Arrays.asList(*customMigrationResolvers))
     }
 
     /**
@@ -91,7 +133,7 @@ class CompositeMigrationResolver(
      */
     @Throws(CassandraMigrationException::class)
     private fun doFindAvailableMigrations(): List<ResolvedMigration> {
-        val migrations = ArrayList(collectMigrations(migrationResolvers))
+        val migrations = ArrayList(collectMigrations(migrationResolvers, parallelism, customMigrationResolvers))
         migrations.sortWith(ResolvedMigrationComparator())
 
         checkForIncompatibilities(migrations)
@@ -104,14 +146,47 @@ class CompositeMigrationResolver(
      */
     companion object {
 
+        /** The migration index of each classpath location, `null` for locations without an index. */
+        private val INDEXES = ClassLoaderCache<Location, MigrationIndex?>()
+
         /**
-         * Collects all the migrations for all migration resolvers.
+         * Collects all the migrations for all migration resolvers. The migration resolvers are run concurrently on a
+         * single fork-join pool if enabled (also walking their filesystem directories), while the calling thread runs
+         * the caller migration resolvers. Their migrations are still merged in the order of the migration resolvers,
+         * followed by the caller migration resolvers.
          *
          * @param migrationResolvers The migration resolvers to check.
+         * @param parallelism The size of the pool running the migration resolvers, 1 to run them one at a time.
+         * @param callerMigrationResolvers The migration resolvers to always run on the calling thread (e.g. custom
+         *                                 migration resolvers).
          * @return All migrations.
+         * @throws CassandraMigrationException when any of the migration resolvers failed.
          */
-        fun collectMigrations(migrationResolvers: Collection<MigrationResolver>): Collection<ResolvedMigration> {
-            return migrationResolvers.flatMap { it.resolveMigrations() }.distinct()
+        fun collectMigrations(
+            migrationResolvers: Collection<MigrationResolver>,
+            parallelism: Int = 1,
+            callerMigrationResolvers: Collection<MigrationResolver> = emptyList()
+        ): Collection<ResolvedMigration> {
+            // GUARD: Run migration resolvers one at a time
+            if (parallelism <= 1 || migrationResolvers.size <= 1) {
+                return (migrationResolvers + callerMigrationResolvers).flatMap { it.resolveMigrations() }.distinct()
+            }
+
+            val pool = ForkJoinPool(parallelism)
+            try {
+                val tasks = migrationResolvers.map { resolver -> pool.submit(Callable { resolver.resolveMigrations() }) }
+                val callerMigrations = callerMigrationResolvers.flatMap { it.resolveMigrations() }
+
+                return (tasks.flatMap { it.get() } + callerMigrations).distinct()
+            } catch (e: ExecutionException) {
+                val cause = e.cause
+                throw cause as? CassandraMigrationException ?: CassandraMigrationException("Unable to resolve migrations", e)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw CassandraMigrationException("Interrupted while resolving migrations", e)
+            } finally {
+                pool.shutdownNow()
+            }
         }
 
         /**
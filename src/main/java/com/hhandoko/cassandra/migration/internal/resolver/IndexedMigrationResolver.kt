@@ -0,0 +1,126 @@
+/**
+ * File     : IndexedMigrationResolver.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.resolver
+
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.api.migration.java.JavaMigration
+import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
+import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
+import com.hhandoko.cassandra.migration.internal.resolver.cql.CqlMigrationExecutor
+import com.hhandoko.cassandra.migration.internal.resolver.java.JavaMigrationExecutor
+import com.hhandoko.cassandra.migration.internal.util.ClassUtils
+import com.hhandoko.cassandra.migration.internal.util.Location
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
+import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathResource
+
+/**
+ * Migration resolver for the CQL and Java migrations listed in the build-time index of a classpath location, replacing
+ * the classpath scanning of the CqlMigrationResolver and JavaMigrationResolver.
+ *
+ * The checksums of CQL migrations are taken from the index (and verified against the CQL scripts before execution),
+ * so CQL scripts are only loaded when executed. The physical
+ * locations and CQL executors are only looked up and created when accessed.
+ *
+ * @param classLoader The ClassLoader for loading migrations on the classpath.
+ * @param location The location on the classpath where the migrations are located.
+ * @param index The migration index of the location.
+ * @param encoding The encoding of the .cql file.
+ * @param timeout The read script timeout duration in seconds.
+ * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
+ * @param schemaAgreement The schema agreement barrier to wait on after each schema change.
+ * @param statementCache The cache of parsed statement boundaries, or `null` to always parse the CQL scripts.
+ */
+class IndexedMigrationResolver(
+    private val classLoader: ClassLoader,
+    private val location: Location,
+    private val index: MigrationIndex,
+    private val encoding: String,
+    private val timeout: Int,
+    private val asyncWindow: Int = 1,
+    private val schemaAgreement: SchemaAgreement? = null,
+    private val statementCache: CqlStatementCache? = null
+) : MigrationResolver {
+
+    /**
+     * Resolves the available migrations.
+     *
+     * @return The available migrations.
+     * @throws CassandraMigrationException when an indexed migration cannot be found.
+     */
+    @Throws(CassandraMigrationException::class)
+    override fun resolveMigrations(): List<ResolvedMigration> {
+        return index.entries.map { entry ->
+            val migration = ResolvedMigrationImpl()
+            migration.version = MigrationVersion.fromVersion(entry.version)
+            migration.description = entry.description
+            migration.script = entry.script
+            migration.checksum = entry.checksum
+            migration.type = entry.type
+
+            when (entry.type) {
+                MigrationType.CQL         -> resolveCqlMigration(migration)
+                MigrationType.JAVA_DRIVER -> resolveJavaMigration(migration)
+                else                      -> {
+                    val unsupportedTypeMsg = "Unsupported migration type ${entry.type} in the index of location $location"
+                    throw CassandraMigrationException(unsupportedTypeMsg)
+                }
+            }
+            migration
+        }.sortedWith(ResolvedMigrationComparator())
+    }
+
+    /**
+     * Completes this indexed CQL migration with its (lazily computed) physical location and executor.
+     *
+     * @param migration The indexed CQL migration.
+     */
+    private fun resolveCqlMigration(migration: ResolvedMigrationImpl) {
+        val path = if (location.path!!.isEmpty()) migration.script!! else "${location.path}/${migration.script}"
+        val resource = ClassPathResource(path, classLoader)
+
+        val checksum = migration.checksum
+        migration.physicalLocationBy { resource.locationOnDisk }
+        migration.executorBy {
+            CqlMigrationExecutor(
+                ResourceContent(resource, encoding), timeout, asyncWindow, schemaAgreement, checksum, statementCache
+            )
+        }
+    }
+
+    /**
+     * Completes this indexed Java migration with its (lazily computed) physical location and executor.
+     *
+     * @param migration The indexed Java migration.
+     * @throws CassandraMigrationException when the migration class cannot be instantiated.
+     */
+    private fun resolveJavaMigration(migration: ResolvedMigrationImpl) {
+        val javaMigration = try {
+            ClassUtils.instantiate<JavaMigration>(migration.script, classLoader)
+        } catch (e: Exception) {
+            throw CassandraMigrationException("Unable to instantiate indexed Java migration: ${migration.script}", e)
+        }
+
+        migration.physicalLocationBy { ClassUtils.getLocationOnDisk(javaMigration.javaClass) }
+        migration.executor = JavaMigrationExecutor(javaMigration)
+    }
+
+}
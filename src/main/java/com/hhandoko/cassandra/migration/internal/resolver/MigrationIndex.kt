@@ -0,0 +1,243 @@
+/**
+ * File     : MigrationIndex.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.resolver
+
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.util.Location
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathScanner
+import java.io.*
+import java.util.*
+
+/**
+ * Index of the migrations available in a classpath location, written at build time next to the migrations, so that
+ * they can be resolved without scanning the classpath at runtime.
+ *
+ * The index is a UTF-8 text file, starting with a format header line followed by one tab-separated line per migration:
+ * type, version, checksum, script (relative to the location for CQL migrations, the class name for Java migrations)
+ * and description.
+ *
+ * @param entries The indexed migrations.
+ */
+class MigrationIndex(val entries: List<Entry>) {
+
+    /**
+     * Writes this index.
+     *
+     * @param writer The writer to write the index to. The caller is responsible for closing it.
+     */
+    fun write(writer: Writer) {
+        writer.write("$FORMAT_HEADER $FORMAT_VERSION\n")
+        entries.forEach {
+            val checksum = it.checksum?.toString().orEmpty()
+            writer.write("${it.type}\t${it.version}\t$checksum\t${escape(it.script)}\t${escape(it.description)}\n")
+        }
+    }
+
+    /**
+     * An indexed migration.
+     *
+     * @param type The type of the migration, either CQL or JAVA_DRIVER.
+     * @param version The version of the migration.
+     * @param checksum The checksum of the migration.
+     * @param script The script of the migration, relative to its location for CQL migrations or the class name for
+     *               Java migrations.
+     * @param description The description of the migration.
+     */
+    data class Entry(
+        val type: MigrationType,
+        val version: String,
+        val checksum: Int?,
+        val script: String,
+        val description: String
+    )
+
+    /**
+     * MigrationIndex companion object.
+     */
+    companion object {
+        private val LOG = LogFactory.getLog(MigrationIndex::class.java)
+
+        /**
+         * The name of the index file, in the location directory.
+         */
+        val FILE_NAME = "cassandra-migration.idx"
+
+        /**
+         * The header of the index file.
+         */
+        private val FORMAT_HEADER = "cassandra-migration-index"
+
+        /**
+         * The version of the index file format.
+         */
+        private val FORMAT_VERSION = 1
+
+        /**
+         * Creates the index of these resolved migrations.
+         *
+         * @param migrations The resolved CQL and Java migrations.
+         * @return The migration index.
+         */
+        fun of(migrations: List<ResolvedMigration>): MigrationIndex {
+            return MigrationIndex(migrations.map {
+                Entry(it.type!!, it.version.toString(), it.checksum, it.script!!, it.description.orEmpty())
+            })
+        }
+
+        /**
+         * Loads the index of this location, merging the index files of all classpath elements contributing to it.
+         *
+         * @param classLoader The ClassLoader to find the index files with.
+         * @param location The classpath location.
+         * @return The migration index, or `null` if the location has no (supported) index in every classpath element
+         *         contributing to it, and must be scanned.
+         * @throws CassandraMigrationException when an index file cannot be read.
+         */
+        fun load(classLoader: ClassLoader, location: Location): MigrationIndex? {
+            // GUARD: Only classpath locations are indexed
+            if (!location.isClassPath) return null
+
+            val path = if (location.path!!.isEmpty()) FILE_NAME else "${location.path}/$FILE_NAME"
+            val urls = Collections.list(classLoader.getResources(path))
+            if (urls.isEmpty()) return null
+
+            // GUARD: Only use the index if every classpath root of the location ships one, so that the migrations of
+            //        unindexed roots (e.g. another jar or the test classes) are not dropped
+            val indexedRoots = urls.map { it.toString().removeSuffix("/$FILE_NAME") }.toSet()
+            val unindexedRoots = Collections.list(classLoader.getResources(location.path))
+                    .filter { !indexedRoots.contains(it.toString().removeSuffix("/")) }
+                    .map { it.toString() } + findUnindexedJars(classLoader, location, path)
+            if (unindexedRoots.isNotEmpty()) {
+                LOG.warn("No migration index in $unindexedRoots, scanning location $location instead")
+                return null
+            }
+
+            val entries = LinkedHashSet<Entry>()
+            for (url in urls) {
+                try {
+                    val index = InputStreamReader(url.openStream(), Charsets.UTF_8).use { read(it) }
+                    if (index == null) {
+                        LOG.warn("Unsupported migration index format in $url, scanning location $location instead")
+                        return null
+                    }
+                    entries.addAll(index.entries)
+                } catch (e: IOException) {
+                    throw CassandraMigrationException("Unable to read migration index $url", e)
+                }
+            }
+
+            LOG.debug("Found migration index for location $location (${entries.size} migrations)")
+            return MigrationIndex(ArrayList(entries))
+        }
+
+        /**
+         * Finds the jar files without directory entries contributing to this location without an index, as looking up
+         * the location with the ClassLoader does not find them.
+         *
+         * @param classLoader The ClassLoader to find the jar files of.
+         * @param location The classpath location.
+         * @param indexPath The path of the index file of the location.
+         * @return The paths of the unindexed jar files.
+         * @throws CassandraMigrationException when a jar file cannot be read.
+         */
+        private fun findUnindexedJars(classLoader: ClassLoader, location: Location, indexPath: String): List<String> {
+            val prefix = if (location.path!!.isEmpty()) "" else "${location.path}/"
+            try {
+                return ClassPathScanner.findJarEntriesWithoutDirectories(classLoader, prefix)
+                        .filter { !it.value.contains(indexPath) }
+                        .map { it.key.path }
+            } catch (e: IOException) {
+                throw CassandraMigrationException("Unable to read the jar files of location $location", e)
+            }
+        }
+
+        /**
+         * Reads an index.
+         *
+         * @param reader The reader to read the index from. The caller is responsible for closing it.
+         * @return The migration index, or `null` if its format is not supported.
+         * @throws CassandraMigrationException when the index is malformed.
+         */
+        fun read(reader: Reader): MigrationIndex? {
+            val lines = reader.buffered().readLines()
+
+            // GUARD: Unknown format header or version
+            if (lines.isEmpty() || lines[0] != "$FORMAT_HEADER $FORMAT_VERSION") return null
+
+            return MigrationIndex(lines.drop(1).filter { it.isNotEmpty() }.map { line ->
+                val fields = line.split('\t')
+                if (fields.size != 5) {
+                    throw CassandraMigrationException("Malformed migration index line: $line")
+                }
+
+                Entry(
+                    MigrationType.valueOf(fields[0]),
+                    fields[1],
+                    if (fields[2].isEmpty()) null else fields[2].toInt(),
+                    unescape(fields[3]),
+                    unescape(fields[4])
+                )
+            })
+        }
+
+        /**
+         * Escapes the backslashes, tabs and line breaks of an index field.
+         *
+         * @param value The field value.
+         * @return The escaped field value.
+         */
+        private fun escape(value: String): String {
+            return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r")
+        }
+
+        /**
+         * Unescapes an index field.
+         *
+         * @param value The escaped field value.
+         * @return The field value.
+         */
+        private fun unescape(value: String): String {
+            // GUARD: Nothing to unescape
+            if (value.indexOf('\\') < 0) return value
+
+            val sb = StringBuilder(value.length)
+            var i = 0
+            while (i < value.length) {
+                val c = value[i]
+                if (c == '\\' && i + 1 < value.length) {
+                    i++
+                    sb.append(when (value[i]) {
+                        't'  -> '\t'
+                        'n'  -> '\n'
+                        'r'  -> '\r'
+                        else -> value[i]
+                    })
+                } else {
+                    sb.append(c)
+                }
+                i++
+            }
+            return sb.toString()
+        }
+
+    }
+
+}
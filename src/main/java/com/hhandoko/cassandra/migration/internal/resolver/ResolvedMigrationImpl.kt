@@ -25,6 +25,10 @@ import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
 
 /**
  * A migration available on the classpath.
+ *
+ * The description, checksum, physical location and executor can be computed on first access (see `descriptionBy`,
+ * `checksumBy`, `physicalLocationBy` and `executorBy`), so that resolving a large number of migrations only retains
+ * their version and script, and only the migrations actually validated or executed are looked up on disk.
  */
 class ResolvedMigrationImpl : ResolvedMigration {
 
@@ -35,10 +39,28 @@ class ResolvedMigrationImpl : ResolvedMigration {
         get set
 
     /**
-     * The description of the migration.
+     * The description of the migration, computed on first access when set with `descriptionBy`.
      */
     override var description: String? = null
-        get set
+        get() = lazyDescription?.value ?: field
+        set(value) {
+            lazyDescription = null
+            field = value
+        }
+
+    /**
+     * The lazily computed (and memoized) description of the migration, if any.
+     */
+    private var lazyDescription: Lazy<String?>? = null
+
+    /**
+     * Sets the description of the migration to be computed on first access.
+     *
+     * @param initializer The function computing the description, called at most once.
+     */
+    fun descriptionBy(initializer: () -> String?) {
+        lazyDescription = lazy(initializer)
+    }
 
     /**
      * The name of the script to execute for this migration, relative to its classpath location.
@@ -47,10 +69,29 @@ class ResolvedMigrationImpl : ResolvedMigration {
         get set
 
     /**
-     * The checksum of the migration.
+     * The checksum of the migration, computed on first access when set with `checksumBy`.
      */
     override var checksum: Int? = null
-        get set
+        get() = lazyChecksum?.value ?: field
+        set(value) {
+            lazyChecksum = null
+            field = value
+        }
+
+    /**
+     * The lazily computed (and memoized) checksum of the migration, if any.
+     */
+    private var lazyChecksum: Lazy<Int?>? = null
+
+    /**
+     * Sets the checksum of the migration to be computed on first access, e.g. so that the CQL scripts of migrations that
+     * are neither validated nor executed are never read.
+     *
+     * @param initializer The function computing the checksum, called at most once.
+     */
+    fun checksumBy(initializer: () -> Int?) {
+        lazyChecksum = lazy(initializer)
+    }
 
     /**
      * The type of migration (CQL, JAVA_DRIVER)
@@ -59,27 +100,62 @@ class ResolvedMigrationImpl : ResolvedMigration {
         get set
 
     /**
-     * The physical location of the migration on disk.
+     * The physical location of the migration on disk, computed on first access when set with `physicalLocationBy`.
      */
     override var physicalLocation: String? = null
-        get set
+        get() = lazyPhysicalLocation?.value ?: field
+        set(value) {
+            lazyPhysicalLocation = null
+            field = value
+        }
+
+    /**
+     * The lazily computed (and memoized) physical location of the migration, if any.
+     */
+    private var lazyPhysicalLocation: Lazy<String?>? = null
+
+    /**
+     * Sets the physical location of the migration to be computed on first access, e.g. so that the location on disk
+     * of a classpath resource is only looked up through its ClassLoader when reported.
+     *
+     * @param initializer The function computing the physical location, called at most once.
+     */
+    fun physicalLocationBy(initializer: () -> String?) {
+        lazyPhysicalLocation = lazy(initializer)
+    }
 
     /**
-     * The executor to run this migration.
+     * The executor to run this migration, created on first access when set with `executorBy`.
      */
     override var executor: MigrationExecutor? = null
-        get set
+        get() = lazyExecutor?.value ?: field
+        set(value) {
+            lazyExecutor = null
+            field = value
+        }
 
     /**
-     * @return The computed migration instance hash value.
+     * The lazily created (and memoized) executor of the migration, if any.
+     */
+    private var lazyExecutor: Lazy<MigrationExecutor?>? = null
+
+    /**
+     * Sets the executor of the migration to be created on first access, i.e. only for the migrations executed.
+     *
+     * @param initializer The function creating the executor, called at most once.
+     */
+    fun executorBy(initializer: () -> MigrationExecutor?) {
+        lazyExecutor = lazy(initializer)
+    }
+
+    /**
+     * @return The computed migration instance hash value. The description, checksum and physical location are left
+     *         out, so that they are not computed.
      */
     override fun hashCode(): Int {
         var result = version?.hashCode() ?: 0
-        result = 31 * result + (description?.hashCode() ?: 0)
         result = 31 * result + (script?.hashCode() ?: 0)
-        result = 31 * result + (checksum?.hashCode() ?: 0)
         result = 31 * result + (type?.hashCode() ?: 0)
-        result = 31 * result + (physicalLocation?.hashCode() ?: 0)
         return result
     }
 
@@ -129,12 +205,12 @@ class ResolvedMigrationImpl : ResolvedMigration {
         return when {
             this === other                  -> true
             isNotSame()                     -> false
-            isNotSameChecksum(that)         -> false
-            isNotSameDescription(that)      -> false
-            isNotSamePhysicalLocation(that) -> false
             isNotSameScript(that)           -> false
             type !== that.type              -> false
-            else                            -> version == that.version
+            version != that.version         -> false
+            isNotSameDescription(that)      -> false // Compared last, as they may be computed
+            isNotSamePhysicalLocation(that) -> false
+            else                            -> !isNotSameChecksum(that)
         }
     }
 
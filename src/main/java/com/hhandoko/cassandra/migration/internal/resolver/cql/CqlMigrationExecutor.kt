@@ -19,33 +19,63 @@
 package com.hhandoko.cassandra.migration.internal.resolver.cql
 
 import com.datastax.driver.core.Session
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.resolver.MigrationExecutor
 import com.hhandoko.cassandra.migration.internal.dbsupport.CqlScript
-import com.hhandoko.cassandra.migration.internal.util.scanner.Resource
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
 
 /**
  * Database migration based on a cql file.
  *
- * @param cqlScriptResource The resource containing the cql script.
- *                          The complete CQL script is not held as a member field here because this would use the total
- *                          size of all CQL migrations files in heap space during db migration.
- * @param encoding The encoding of this CQL migration.
+ * @param cqlScriptContent The content of the resource containing the cql script.
+ *                         The complete CQL script is only retained within the content budget, shared by all CQL
+ *                         migrations, as holding all of them would use their total size in heap space during db
+ *                         migration.
  * @param timeout The timout duration of this CQL migration.
+ * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
+ * @param schemaAgreement The schema agreement barrier to wait on after each schema change.
+ * @param checksum The expected checksum of this CQL migration (e.g. taken from a migration index), verified against the
+ *                 CQL script content before execution, or `null` to not verify it.
+ * @param statementCache The cache of parsed statement boundaries, or `null` to always parse the CQL script.
  */
 class CqlMigrationExecutor(
-    private val cqlScriptResource: Resource,
-    private val encoding: String,
-    private val timeout: Int
+    private val cqlScriptContent: ResourceContent,
+    private val timeout: Int,
+    private val asyncWindow: Int = 1,
+    private val schemaAgreement: SchemaAgreement? = null,
+    private val checksum: Int? = null,
+    private val statementCache: CqlStatementCache? = null
 ) : MigrationExecutor {
 
     /**
      * Execute the CQL-based migration.
      *
      * @param session The Cassandra session connection to use to execute the migration.
+     * @throws CassandraMigrationException when the CQL script content does not match the expected checksum.
      */
     override fun execute(session: Session) {
-        val cqlScript = CqlScript(cqlScriptResource, encoding, timeout)
+        // NOTE: The checksum is calculated before reading the script, so that the script content is loaded (and retained
+        //       within the content budget) only once for both the checksum recorded after execution and the execution
+        val scriptChecksum = cqlScriptContent.checksum
+        if (checksum != null && checksum != scriptChecksum) {
+            val resource = cqlScriptContent.resource
+            val mismatchMsg = "Checksum of ${resource.location} ($scriptChecksum) does not match its expected checksum " +
+                    "($checksum), the migration index may be out of date"
+            throw CassandraMigrationException(mismatchMsg)
+        }
+
+        val cqlScript = CqlScript(cqlScriptContent, timeout, asyncWindow, schemaAgreement, statementCache)
         cqlScript.execute(session)
     }
 
+    /**
+     * Releases the CQL script content retained from the checksum calculation, when this migration is not going to be
+     * executed (e.g. already applied).
+     */
+    fun releaseContent() {
+        cqlScriptContent.release()
+    }
+
 }
@@ -18,35 +18,55 @@
  */
 package com.hhandoko.cassandra.migration.internal.resolver.cql
 
-import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.MigrationVersion
 import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
 import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaAgreement
 import com.hhandoko.cassandra.migration.internal.resolver.MigrationInfoHelper
 import com.hhandoko.cassandra.migration.internal.resolver.ResolvedMigrationComparator
 import com.hhandoko.cassandra.migration.internal.resolver.ResolvedMigrationImpl
+import com.hhandoko.cassandra.migration.internal.util.ClassLoaderCache
 import com.hhandoko.cassandra.migration.internal.util.Location
+import com.hhandoko.cassandra.migration.internal.util.Pair
 import com.hhandoko.cassandra.migration.internal.util.scanner.Resource
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext
 import com.hhandoko.cassandra.migration.internal.util.scanner.Scanner
-import java.io.BufferedReader
-import java.io.IOException
-import java.io.StringReader
+import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathResource
 import java.util.zip.CRC32
 
 /**
  * Migration resolver for CQL files on the classpath.
  * The CQL files must have names like V1__Description.cql or V1_1__Description.cql.
  *
+ * The scripts found in a classpath location are shared by all the resolvers of that location using the same
+ * ClassLoader, so the classpath is only scanned once per location. Filesystem locations are scanned on each resolution.
+ * The description, physical location, checksum and executor of each migration are only computed when accessed.
+ *
  * @param classLoader The ClassLoader for loading migrations on the classpath.
  * @param location The location on the classpath where the migrations are located.
  * @param encoding The encoding of the .cql file.
  * @param timeout The read script timeout duration in seconds.
+ * @param asyncWindow The maximum number of DML statements in flight, 1 to execute all statements one at a time.
+ * @param schemaAgreement The schema agreement barrier to wait on after each schema change.
+ * @param statementCache The cache of parsed statement boundaries, or `null` to always parse the CQL scripts.
+ * @param contentBudget The budget of CQL scripts content retained between checksum calculation and execution.
+ * @param parallelism The number of filesystem directories walked concurrently, 1 to walk them one at a time.
+ * @param scanContext The scan context shared by all resolvers of a migration run.
  */
 class CqlMigrationResolver(
-    classLoader: ClassLoader,
+    private val classLoader: ClassLoader,
     private val location: Location,
     private val encoding: String,
-    private val timeout: Int
+    private val timeout: Int,
+    private val asyncWindow: Int = 1,
+    private val schemaAgreement: SchemaAgreement? = null,
+    private val statementCache: CqlStatementCache? = null,
+    private val contentBudget: ResourceContent.Budget? = null,
+    parallelism: Int = 1,
+    scanContext: ScanContext = ScanContext()
 ) : MigrationResolver {
 
     /** The scanner to use. */
@@ -56,7 +76,7 @@ class CqlMigrationResolver(
      * CqlMigrationResolver initialization.
      */
     init {
-        this.scanner = Scanner(classLoader)
+        this.scanner = Scanner(classLoader, scanContext, parallelism)
     }
 
     /**
@@ -65,37 +85,67 @@ class CqlMigrationResolver(
      * @return The available migrations.
      */
     override fun resolveMigrations(): List<ResolvedMigration> {
-        val resources = scanner.scanForResources(location, CQL_MIGRATION_PREFIX, CQL_MIGRATION_SUFFIX)
-
-        return resources.map { resource ->
+        return scanForResources().map { resource ->
             val resolvedMigration = extractMigrationInfo(resource)
-            resolvedMigration.physicalLocation = resource.locationOnDisk
-            resolvedMigration.executor = CqlMigrationExecutor(resource, encoding, timeout)
+            resolvedMigration.physicalLocationBy { resource.locationOnDisk }
+
+            // The script is only loaded when its checksum is needed, i.e. when validated or executed
+            val content = lazy { ResourceContent(resource, encoding, contentBudget) }
+            resolvedMigration.checksumBy { content.value.checksum }
+            resolvedMigration.executorBy {
+                CqlMigrationExecutor(content.value, timeout, asyncWindow, schemaAgreement, statementCache = statementCache)
+            }
             resolvedMigration
         }.sortedWith(ResolvedMigrationComparator())
     }
 
     /**
-     * Extracts the migration info for this resource.
+     * Scans the location for CQL migration scripts, only once per ClassLoader for classpath locations.
+     *
+     * @return The CQL migration scripts.
+     */
+    private fun scanForResources(): List<Resource> {
+        // GUARD: Scan filesystem locations on each resolution, as their content may change
+        if (!location.isClassPath) {
+            return scanner.scanForResources(location, CQL_MIGRATION_PREFIX, CQL_MIGRATION_SUFFIX).asList()
+        }
+
+        // The shared resource names must not reference the ClassLoader, the resources are created for each resolution
+        val names = SCANNED_RESOURCE_NAMES.getOrPut(classLoader, location) {
+            scanner.scanForResources(location, CQL_MIGRATION_PREFIX, CQL_MIGRATION_SUFFIX).map { it.location }
+        }
+        return names.map { ClassPathResource(it, classLoader) }
+    }
+
+    /**
+     * Extracts the migration info for this resource, except its checksum. The description is only extracted when
+     * accessed.
      *
      * @param resource The resource to analyse.
      * @return The migration info.
      */
-    private fun extractMigrationInfo(resource: Resource): ResolvedMigration {
-        val info = MigrationInfoHelper.extractVersionAndDescription(
+    private fun extractMigrationInfo(resource: Resource): ResolvedMigrationImpl {
+        val migration = ResolvedMigrationImpl()
+        migration.version = extractVersionAndDescription(resource).left
+        migration.descriptionBy { extractVersionAndDescription(resource).right }
+        migration.script = extractScriptName(resource)
+        migration.type = MigrationType.CQL
+        return migration
+    }
+
+    /**
+     * Extracts the version and description from the file name of this resource.
+     *
+     * @param resource The resource to analyse.
+     * @return The version and description.
+     */
+    private fun extractVersionAndDescription(resource: Resource): Pair<MigrationVersion, String> {
+        return MigrationInfoHelper.extractVersionAndDescription(
             resource.filename,
             CQL_MIGRATION_PREFIX,
             CQL_MIGRATION_SEPARATOR,
             CQL_MIGRATION_SUFFIX
         )
-
-        val migration = ResolvedMigrationImpl()
-        migration.version = info.left
-        migration.description = info.right
-        migration.script = extractScriptName(resource)
-        migration.checksum = calculateChecksum(resource, resource.loadAsString("UTF-8"))
-        migration.type = MigrationType.CQL
-        return migration
     }
 
     /**
@@ -126,41 +176,22 @@ class CqlMigrationResolver(
         /** The suffix for cql migrations. */
         private val CQL_MIGRATION_SUFFIX = ".cql"
 
+        /** The names of the CQL migration scripts found in each classpath location, shared by all resolvers. */
+        private val SCANNED_RESOURCE_NAMES = ClassLoaderCache<Location, List<String>>()
+
         /**
          * Calculates the checksum of these bytes.
          *
          * @param bytes The bytes to calculate the checksum for.
          * @return The crc-32 checksum of the bytes.
          */
-        @Deprecated("Replaced with `calculateChecksum(resource: Resource, str: String)` as per Flyway 4.x")
+        @Deprecated("Replaced with `ResourceContent.checksum` (line-based checksum) as per Flyway 4.x")
         private fun calculateChecksum(bytes: ByteArray): Int {
             val crc32 = CRC32()
             crc32.update(bytes)
             return crc32.value.toInt()
         }
 
-        /**
-         * Calculates the checksum of this string.
-         *
-         * @param resource The resource to process.
-         * @param str The string to calculate the checksum for.
-         * @return The crc-32 checksum of the bytes.
-         */
-        private fun calculateChecksum(resource: Resource, str: String): Int {
-            val crc32 = CRC32()
-
-            try {
-                BufferedReader(StringReader(str)).forEachLine { line ->
-                    crc32.update(line.toByteArray(charset("UTF-8")))
-                }
-            } catch (e: IOException) {
-                val message = "Unable to calculate checksum for ${resource.location} (${resource.locationOnDisk})"
-                throw CassandraMigrationException(message, e)
-            }
-
-            return crc32.value.toInt()
-        }
-
     }
 
 }
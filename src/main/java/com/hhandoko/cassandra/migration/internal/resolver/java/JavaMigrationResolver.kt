@@ -32,6 +32,8 @@ import com.hhandoko.cassandra.migration.internal.resolver.ResolvedMigrationImpl
 import com.hhandoko.cassandra.migration.internal.util.ClassUtils
 import com.hhandoko.cassandra.migration.internal.util.Location
 import com.hhandoko.cassandra.migration.internal.util.StringUtils
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext
 import com.hhandoko.cassandra.migration.internal.util.scanner.Scanner
 import java.util.*
 
@@ -41,10 +43,12 @@ import java.util.*
  *
  * @param classLoader The ClassLoader for loading migrations on the classpath.
  * @param location The base package on the classpath where to migrations are located.
+ * @param scanContext The scan context shared by all resolvers of a migration run.
  */
 class JavaMigrationResolver(
     private val classLoader: ClassLoader,
-    private val location: Location?
+    private val location: Location?,
+    private val scanContext: ScanContext = ScanContext()
 ) : MigrationResolver {
 
     /**
@@ -62,13 +66,14 @@ class JavaMigrationResolver(
         }
 
         try {
-            val classes = Scanner(classLoader).scanForClasses(location, JavaMigration::class.java)
+            val classes = Scanner(classLoader, scanContext).scanForClasses(location, JavaMigration::class.java)
 
-            return classes.map { clazz ->
-                val javaMigration = ClassUtils.instantiate<JavaMigration>(clazz.name, classLoader)
+            return classes.mapNotNull { clazz ->
+                // Instantiate the scanned class directly, each migration class is only loaded and instantiated once
+                val javaMigration = instantiate(clazz) ?: return@mapNotNull null
 
                 val resolvedMigration = extractMigrationInfo(javaMigration)
-                resolvedMigration.physicalLocation = ClassUtils.getLocationOnDisk(clazz)
+                resolvedMigration.physicalLocationBy { ClassUtils.getLocationOnDisk(clazz) }
                 resolvedMigration.executor = JavaMigrationExecutor(javaMigration)
                 resolvedMigration
             }.sortedWith(ResolvedMigrationComparator())
@@ -77,6 +82,28 @@ class JavaMigrationResolver(
         }
     }
 
+    /**
+     * Instantiates this migration class, skipping the classes that cannot be loaded or initialized.
+     *
+     * @param clazz The migration class.
+     * @return The migration, or `null` if the class is skipped.
+     * @throws CassandraMigrationException when the class cannot be instantiated.
+     */
+    private fun instantiate(clazz: Class<*>): JavaMigration? {
+        try {
+            return clazz.newInstance() as JavaMigration
+        } catch (e: InternalError) {
+            LOG.debug("Skipping invalid class: ${clazz.name}")
+        } catch (e: IncompatibleClassChangeError) {
+            LOG.debug("Skipping incompatibly changed class: ${clazz.name}")
+        } catch (e: NoClassDefFoundError) {
+            LOG.debug("Skipping non-loadable class: ${clazz.name}")
+        } catch (e: Exception) {
+            throw CassandraMigrationException("Unable to instantiate class: ${clazz.name}", e)
+        }
+        return null
+    }
+
     /**
      * Extracts the migration info from this migration.
      *
@@ -85,7 +112,7 @@ class JavaMigrationResolver(
      * @throws CassandraMigrationException when JavaMigration is missing its description.
      */
     @Throws(CassandraMigrationException::class)
-    fun extractMigrationInfo(javaMigration: JavaMigration): ResolvedMigration {
+    fun extractMigrationInfo(javaMigration: JavaMigration): ResolvedMigrationImpl {
         val checksum: Int?
         if (javaMigration is MigrationChecksumProvider) {
             checksum = javaMigration.checksum
@@ -118,4 +145,12 @@ class JavaMigrationResolver(
         resolvedMigration.type = MigrationType.JAVA_DRIVER
         return resolvedMigration
     }
+
+    /**
+     * JavaMigrationResolver companion object.
+     */
+    companion object {
+        private val LOG = LogFactory.getLog(JavaMigrationResolver::class.java)
+    }
+
 }
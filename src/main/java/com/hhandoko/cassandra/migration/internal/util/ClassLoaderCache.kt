@@ -0,0 +1,71 @@
+/**
+ * File     : ClassLoaderCache.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util
+
+import java.util.*
+
+/**
+ * Cache of values resolved from the classpath of a ClassLoader, shared by all the migration runs (and all the
+ * `CassandraMigration` instances) using that ClassLoader, e.g. the migrations found in a classpath location.
+ *
+ * The classpath content is assumed not to change while the ClassLoader is in use. The ClassLoaders are weakly
+ * referenced, so the cached values must not reference their ClassLoader, otherwise it would never be collected.
+ *
+ * @param K The key type.
+ * @param V The value type.
+ */
+class ClassLoaderCache<K, V> {
+
+    /**
+     * The cached values of each ClassLoader.
+     */
+    private val values = WeakHashMap<ClassLoader, MutableMap<K, V>>()
+
+    /**
+     * Retrieves the value for this key, resolving it if not cached yet. The value is resolved outside of the cache
+     * lock, so it may be resolved more than once when retrieved concurrently, only the first one is cached. A failed
+     * resolution is not cached.
+     *
+     * @param classLoader The ClassLoader the value is resolved from.
+     * @param key The key.
+     * @param resolver The resolver of the value, if not cached yet.
+     * @return The value.
+     */
+    fun getOrPut(classLoader: ClassLoader, key: K, resolver: () -> V): V {
+        synchronized(values) {
+            val cached = values[classLoader]
+            if (cached != null && cached.containsKey(key)) {
+                @Suppress("UNCHECKED_CAST")
+                return cached[key] as V
+            }
+        }
+
+        val value = resolver()
+
+        synchronized(values) {
+            val cached = values.getOrPut(classLoader) { HashMap<K, V>() }
+            if (cached.containsKey(key)) {
+                @Suppress("UNCHECKED_CAST")
+                return cached[key] as V
+            }
+            cached.put(key, value)
+            return value
+        }
+    }
+
+}
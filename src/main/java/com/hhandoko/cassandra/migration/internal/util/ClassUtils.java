@@ -59,8 +59,8 @@ public class ClassUtils {
      * @throws Exception Thrown when the instantiation failed.
      */
     @SuppressWarnings({"unchecked"})
-    // Must be synchronized for the Maven Parallel Junit runner to work
-    public static synchronized <T> T instantiate(String className, ClassLoader classLoader) throws Exception {
+    // Not synchronized: class loading and initialization are already thread-safe, so migrations can be resolved concurrently
+    public static <T> T instantiate(String className, ClassLoader classLoader) throws Exception {
         return (T) Class.forName(className, true, classLoader).newInstance();
     }
 
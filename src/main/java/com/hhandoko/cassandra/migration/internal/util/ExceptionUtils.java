@@ -0,0 +1,41 @@
+/**
+ * File     : ExceptionUtils.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util;
+
+/**
+ * Collection of utility methods for dealing with exceptions.
+ */
+public class ExceptionUtils {
+    /**
+     * Prevents instantiation.
+     */
+    private ExceptionUtils() {
+        // Do nothing
+    }
+
+    /**
+     * Attaches this exception to an exception being thrown, as suppressed in order to deliver it, instead of replacing
+     * the exception being thrown (e.g. a cleanup failure while handling a failure).
+     *
+     * @param exception  The exception being thrown.
+     * @param suppressed The exception to attach as suppressed.
+     */
+    public static void addSuppressed(Throwable exception, Throwable suppressed) {
+        exception.addSuppressed(suppressed);
+    }
+}
@@ -18,6 +18,9 @@
  */
 package com.hhandoko.cassandra.migration.internal.util.scanner;
 
+import java.io.InputStream;
+import java.io.Reader;
+
 /**
  * A loadable resource.
  */
@@ -42,6 +45,23 @@ public interface Resource {
      */
     String loadAsString(String encoding);
 
+    /**
+     * Opens this resource for reading as a character stream, without loading its whole contents in memory.
+     * The caller is responsible for closing the reader.
+     *
+     * @param encoding The encoding to use.
+     * @return The reader for the contents of the resource.
+     */
+    Reader openReader(String encoding);
+
+    /**
+     * Opens this resource for reading as a byte stream, without loading its whole contents in memory.
+     * The caller is responsible for closing the stream.
+     *
+     * @return The stream for the contents of the resource.
+     */
+    InputStream openStream();
+
     /**
      * Loads this resource as a byte array.
      *
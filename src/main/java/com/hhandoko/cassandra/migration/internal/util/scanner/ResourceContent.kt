@@ -0,0 +1,259 @@
+/**
+ * File     : ResourceContent.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner
+
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import java.io.*
+import java.nio.charset.Charset
+import java.security.DigestInputStream
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.CRC32
+
+/**
+ * Handle on the content of a resource, loaded once to calculate its checksum and retained (within a byte budget) until
+ * it is read again, so that a resource is not loaded twice from the classpath or the filesystem.
+ *
+ * @param resource The resource.
+ * @param encoding The encoding of the resource.
+ * @param budget The budget of bytes retained in memory, shared by all resources, or `null` to never retain content.
+ */
+class ResourceContent(val resource: Resource, val encoding: String, private val budget: Budget? = null) {
+
+    /**
+     * The retained content, until it is read again.
+     */
+    private var bytes: ByteArray? = null
+
+    /**
+     * The fingerprint of the resource content, calculated in a single streaming pass over the resource content.
+     */
+    val fingerprint: Fingerprint by lazy { calculateFingerprint() }
+
+    /**
+     * The crc-32 checksum of the resource lines.
+     */
+    val checksum: Int
+        get() = fingerprint.checksum
+
+    /**
+     * Opens the resource content for reading as a character stream. The retained content (if any) is handed over to
+     * the reader and released from the budget, otherwise the resource is read again.
+     * The caller is responsible for closing the reader.
+     *
+     * @return The reader for the resource content.
+     */
+    fun openReader(): Reader {
+        val retained = bytes ?: return resource.openReader(encoding)
+
+        bytes = null
+        budget?.release(retained.size.toLong())
+        return InputStreamReader(ByteArrayInputStream(retained), Charset.forName(encoding))
+    }
+
+    /**
+     * Releases the retained content (if any) from the budget, when it is not going to be read again (e.g. the checksum
+     * of an already applied migration).
+     */
+    fun release() {
+        val retained = bytes ?: return
+
+        bytes = null
+        budget?.release(retained.size.toLong())
+    }
+
+    /**
+     * Calculates the fingerprint of the resource content, retaining the resource content if it fits within the budget.
+     *
+     * @return The fingerprint of the resource content.
+     * @throws CassandraMigrationException when the resource cannot be read.
+     */
+    private fun calculateFingerprint(): Fingerprint {
+        val crc32 = CRC32()
+        val digest = MessageDigest.getInstance(DIGEST_ALGORITHM)
+        val input = CapturingInputStream(DigestInputStream(resource.openStream(), digest), budget)
+        var lineCount = 0
+
+        try {
+            InputStreamReader(input, Charset.forName(encoding)).buffered().forEachLine { line ->
+                // Strip the UTF-8 BOM (if any), as `Resource.loadAsString` does, to keep the checksums unchanged
+                val checksumLine = if (lineCount == 0 && line.startsWith("\ufeff")) line.substring(1) else line
+                lineCount++
+                crc32.update(checksumLine.toByteArray(Charsets.UTF_8))
+            }
+        } catch (e: IOException) {
+            input.discard()
+            val message = "Unable to calculate checksum for ${resource.location} (${resource.locationOnDisk})"
+            throw CassandraMigrationException(message, e)
+        }
+
+        bytes = input.captured()
+        return Fingerprint(crc32.value.toInt(), toHex(digest.digest()), input.byteCount, lineCount, Charset.forName(encoding).name())
+    }
+
+    /**
+     * Fingerprint of a resource content.
+     *
+     * @param checksum The crc-32 checksum of the resource lines (line breaks excluded), recorded for applied migrations.
+     * @param digest The SHA-256 digest of the resource bytes, as a hexadecimal string.
+     * @param byteLength The number of bytes of the resource.
+     * @param lineCount The number of lines of the resource.
+     * @param charset The canonical name of the charset the resource is decoded with, as text positions depend on it.
+     */
+    data class Fingerprint(val checksum: Int, val digest: String, val byteLength: Long, val lineCount: Int, val charset: String)
+
+    /**
+     * Budget of resource content bytes retained in memory, shared by concurrent loads.
+     *
+     * @param maxBytes The maximum number of bytes retained, 0 to never retain content.
+     */
+    class Budget(private val maxBytes: Long) {
+
+        /**
+         * The number of bytes currently retained.
+         */
+        private val reserved = AtomicLong()
+
+        /**
+         * @return The number of bytes currently retained.
+         */
+        val reservedBytes: Long
+            get() = reserved.get()
+
+        /**
+         * Reserves these bytes, if they fit within the budget.
+         *
+         * @param count The number of bytes to reserve.
+         * @return `true` if the bytes were reserved.
+         */
+        fun tryReserve(count: Long): Boolean {
+            while (true) {
+                val current = reserved.get()
+                if (current + count > maxBytes) return false
+                if (reserved.compareAndSet(current, current + count)) return true
+            }
+        }
+
+        /**
+         * Releases these previously reserved bytes.
+         *
+         * @param count The number of bytes to release.
+         */
+        fun release(count: Long) {
+            reserved.addAndGet(-count)
+        }
+
+    }
+
+    /**
+     * Input stream capturing the bytes read (and counting them), as long as they fit within the budget.
+     *
+     * @param input The stream to read from.
+     * @param budget The budget of bytes retained in memory, or `null` to not capture any bytes.
+     */
+    private class CapturingInputStream(input: InputStream, private val budget: Budget?) : FilterInputStream(input) {
+
+        /**
+         * The bytes captured so far, or `null` once the budget has been exceeded.
+         */
+        private var buffer: ByteArrayOutputStream? = if (budget != null) ByteArrayOutputStream() else null
+
+        /**
+         * The number of bytes read so far, whether captured or not.
+         */
+        var byteCount = 0L
+            private set
+
+        override fun read(): Int {
+            val b = super.read()
+            if (b >= 0) {
+                byteCount++
+                if (reserve(1)) buffer?.write(b)
+            }
+            return b
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val count = super.read(b, off, len)
+            if (count > 0) {
+                byteCount += count
+                if (reserve(count)) buffer?.write(b, off, count)
+            }
+            return count
+        }
+
+        /**
+         * @return The captured bytes, or `null` if the budget has been exceeded.
+         */
+        fun captured(): ByteArray? {
+            return buffer?.toByteArray()
+        }
+
+        /**
+         * Discards the captured bytes, releasing them from the budget.
+         */
+        fun discard() {
+            buffer?.let { budget?.release(it.size().toLong()) }
+            buffer = null
+        }
+
+        /**
+         * Reserves these bytes for capture, discarding the captured bytes if they do not fit within the budget.
+         *
+         * @param count The number of bytes to reserve.
+         * @return `true` if the bytes are to be captured.
+         */
+        private fun reserve(count: Int): Boolean {
+            // GUARD: Not capturing
+            if (buffer == null) return false
+
+            if (budget!!.tryReserve(count.toLong())) return true
+
+            discard()
+            return false
+        }
+
+    }
+
+    /**
+     * ResourceContent companion object.
+     */
+    companion object {
+
+        /** The algorithm of the resource content digest. */
+        private val DIGEST_ALGORITHM = "SHA-256"
+
+        /** The hexadecimal digits. */
+        private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+        /**
+         * @param bytes The bytes to format.
+         * @return The lower-case hexadecimal representation of these bytes.
+         */
+        private fun toHex(bytes: ByteArray): String {
+            val hex = CharArray(bytes.size * 2)
+            bytes.forEachIndexed { i, b ->
+                hex[i * 2] = HEX_DIGITS[(b.toInt() shr 4) and 0x0f]
+                hex[i * 2 + 1] = HEX_DIGITS[b.toInt() and 0x0f]
+            }
+            return String(hex)
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * File     : ScanContext.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner;
+
+import com.hhandoko.cassandra.migration.internal.util.Location;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Run-scoped context shared by all the scanners of a migration run, so that the classpath is only enumerated once
+ * whatever the number of locations and resource types scanned.
+ *
+ * Each classpath root (directory or jar) is enumerated once into an in-memory index of its resource names, sorted so
+ * that all the resource names under a directory prefix are looked up as a range. The context is thread-safe, each
+ * location and classpath root is only resolved once even when scanned concurrently.
+ */
+public class ScanContext {
+    /**
+     * The physical location URLs of the scanned classpath locations.
+     */
+    private final ConcurrentMap<Location, Future<List<URL>>> locationUrls = new ConcurrentHashMap<Location, Future<List<URL>>>();
+
+    /**
+     * The resource names index of each enumerated classpath root.
+     */
+    private final ConcurrentMap<String, Future<NavigableSet<String>>> rootIndexes = new ConcurrentHashMap<String, Future<NavigableSet<String>>>();
+
+    /**
+     * Retrieves the physical location URLs of this classpath location, resolving them only once.
+     *
+     * @param location The location on the classpath.
+     * @param resolver The resolver of the physical location URLs, if not resolved yet.
+     * @return The physical location URLs.
+     * @throws IOException when the location could not be resolved.
+     */
+    public List<URL> getLocationUrls(Location location, Callable<List<URL>> resolver) throws IOException {
+        return getOrCompute(locationUrls, location, resolver);
+    }
+
+    /**
+     * Retrieves the resource names index of this classpath root, enumerating it only once.
+     *
+     * @param root The classpath root key (e.g. the path of a directory or a jar file).
+     * @param indexer The enumerator of all the resource names in the classpath root, if not enumerated yet. The
+     *                enumerated names must not be modified afterwards, as they are shared by all scanners.
+     * @return The sorted resource names in the classpath root.
+     * @throws IOException when the classpath root could not be enumerated.
+     */
+    public NavigableSet<String> getRootIndex(String root, Callable<NavigableSet<String>> indexer) throws IOException {
+        return getOrCompute(rootIndexes, root, indexer);
+    }
+
+    /**
+     * Finds the resource names in this index starting with this prefix.
+     *
+     * @param index The sorted resource names index.
+     * @param prefix The resource name prefix (e.g. a directory with a trailing slash).
+     * @return The resource names starting with this prefix.
+     */
+    public static SortedSet<String> findByPrefix(NavigableSet<String> index, String prefix) {
+        if (prefix.isEmpty()) {
+            return Collections.unmodifiableSortedSet(index);
+        }
+        return Collections.unmodifiableSortedSet(index.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    /**
+     * Retrieves the value for this key, computing it only once. A failed computation is not cached, so that it is
+     * attempted again on the next retrieval.
+     *
+     * @param values The values computed so far.
+     * @param key The key.
+     * @param computation The computation of the value, if not computed yet.
+     * @param <K> The key type.
+     * @param <V> The value type.
+     * @return The value.
+     * @throws IOException when the computation failed.
+     */
+    private static <K, V> V getOrCompute(ConcurrentMap<K, Future<V>> values, K key, Callable<V> computation) throws IOException {
+        Future<V> future = values.get(key);
+        if (future == null) {
+            FutureTask<V> task = new FutureTask<V>(computation);
+            future = values.putIfAbsent(key, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning: " + key, e);
+        } catch (ExecutionException e) {
+            values.remove(key, future);
+
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Unable to scan: " + key, cause);
+        }
+    }
+}
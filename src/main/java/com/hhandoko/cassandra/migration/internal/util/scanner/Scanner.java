@@ -32,11 +32,36 @@ public class Scanner {
 
     private final ClassLoader classLoader;
 
-    private final FileSystemScanner fileSystemScanner = new FileSystemScanner();
+    private final FileSystemScanner fileSystemScanner;
 
     public Scanner(ClassLoader classLoader) {
+        this(classLoader, new ScanContext());
+    }
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param classLoader The ClassLoader for loading migrations on the classpath.
+     * @param scanContext The scan context shared by all scanners of a migration run, so that the classpath is only
+     *                    enumerated once.
+     */
+    public Scanner(ClassLoader classLoader, ScanContext scanContext) {
+        this(classLoader, scanContext, 1);
+    }
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param classLoader The ClassLoader for loading migrations on the classpath.
+     * @param scanContext The scan context shared by all scanners of a migration run, so that the classpath is only
+     *                    enumerated once.
+     * @param parallelism The number of directories walked concurrently in filesystem locations, 1 to walk them in a
+     *                    single thread.
+     */
+    public Scanner(ClassLoader classLoader, ScanContext scanContext, int parallelism) {
         this.classLoader = classLoader;
-        this.resourceAndClassScanner = new ClassPathScanner(classLoader);
+        this.resourceAndClassScanner = new ClassPathScanner(classLoader, scanContext);
+        this.fileSystemScanner = new FileSystemScanner(parallelism);
     }
 
     /**
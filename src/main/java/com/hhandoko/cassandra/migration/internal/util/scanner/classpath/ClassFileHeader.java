@@ -0,0 +1,208 @@
+/**
+ * File     : ClassFileHeader.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The header of a class file (access flags, class name, superclass and interfaces), read from the class file bytes
+ * without loading the class.
+ *
+ * Class names are internal names, e.g. {@code java/lang/Object}.
+ */
+final class ClassFileHeader {
+    /**
+     * The magic number of class files.
+     */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * The access flag of interfaces.
+     */
+    private static final int ACC_INTERFACE = 0x0200;
+
+    /**
+     * The access flag of abstract classes.
+     */
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    /**
+     * The access flag of enums.
+     */
+    private static final int ACC_ENUM = 0x4000;
+
+    /**
+     * The access flags of the class.
+     */
+    private final int accessFlags;
+
+    /**
+     * The internal name of the class.
+     */
+    private final String className;
+
+    /**
+     * The internal name of the superclass, or {@code null} for {@code java/lang/Object}.
+     */
+    private final String superClassName;
+
+    /**
+     * The internal names of the directly implemented interfaces.
+     */
+    private final List<String> interfaceNames;
+
+    /**
+     * Creates a new class file header.
+     *
+     * @param accessFlags    The access flags of the class.
+     * @param className      The internal name of the class.
+     * @param superClassName The internal name of the superclass, or {@code null} for {@code java/lang/Object}.
+     * @param interfaceNames The internal names of the directly implemented interfaces.
+     */
+    private ClassFileHeader(int accessFlags, String className, String superClassName, List<String> interfaceNames) {
+        this.accessFlags = accessFlags;
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = interfaceNames;
+    }
+
+    /**
+     * Reads the header of a class file, stopping after the interfaces. The stream is not closed.
+     *
+     * @param inputStream The class file content.
+     * @return The class file header.
+     * @throws IOException when the class file could not be read or is malformed.
+     */
+    static ClassFileHeader read(InputStream inputStream) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(inputStream));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // Minor and major versions
+        data.readUnsignedShort();
+        data.readUnsignedShort();
+
+        // Only the UTF-8 and class constants are kept, all other constants are skipped
+        int constantPoolCount = data.readUnsignedShort();
+        String[] utf8Constants = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8Constants[i] = data.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndexes[i] = data.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    data.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    data.readUnsignedByte();
+                    data.readUnsignedShort();
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    data.readInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    data.readLong();
+                    // 8-byte constants take up two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag: " + tag);
+            }
+        }
+
+        int accessFlags = data.readUnsignedShort();
+        String className = getClassName(utf8Constants, classNameIndexes, data.readUnsignedShort());
+        int superClassIndex = data.readUnsignedShort();
+        String superClassName = superClassIndex == 0 ? null : getClassName(utf8Constants, classNameIndexes, superClassIndex);
+
+        int interfacesCount = data.readUnsignedShort();
+        List<String> interfaceNames = new ArrayList<String>(interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames.add(getClassName(utf8Constants, classNameIndexes, data.readUnsignedShort()));
+        }
+
+        return new ClassFileHeader(accessFlags, className, superClassName, Collections.unmodifiableList(interfaceNames));
+    }
+
+    /**
+     * Retrieves the class name referenced by this class constant.
+     *
+     * @param utf8Constants    The UTF-8 constants of the constant pool.
+     * @param classNameIndexes The name indexes of the class constants of the constant pool.
+     * @param index            The index of the class constant.
+     * @return The internal class name.
+     * @throws IOException when the index does not reference a class constant.
+     */
+    private static String getClassName(String[] utf8Constants, int[] classNameIndexes, int index) throws IOException {
+        if (index <= 0 || index >= classNameIndexes.length || classNameIndexes[index] <= 0
+                || classNameIndexes[index] >= utf8Constants.length || utf8Constants[classNameIndexes[index]] == null) {
+            throw new IOException("Invalid class constant index: " + index);
+        }
+        return utf8Constants[classNameIndexes[index]];
+    }
+
+    /**
+     * @return The internal name of the class.
+     */
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return The internal name of the superclass, or {@code null} for {@code java/lang/Object}.
+     */
+    String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * @return The internal names of the directly implemented interfaces.
+     */
+    List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * @return {@code true} if the class can be instantiated, i.e. is not an interface, an abstract class or an enum.
+     */
+    boolean isConcreteClass() {
+        return (accessFlags & (ACC_INTERFACE | ACC_ABSTRACT | ACC_ENUM)) == 0;
+    }
+}
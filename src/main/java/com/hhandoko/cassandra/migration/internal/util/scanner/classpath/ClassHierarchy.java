@@ -0,0 +1,156 @@
+/**
+ * File     : ClassHierarchy.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hhandoko.cassandra.migration.internal.util.logging.Log;
+import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory;
+
+/**
+ * Type hierarchy of the classes on the classpath, read from their class file headers without loading them, to find the
+ * candidate implementations of an interface before loading any class.
+ *
+ * The hierarchy is conservative: a class whose class file (or one of its supertypes' class files) cannot be read is
+ * considered a candidate, so that it is loaded and checked as before. Types in the {@code java/} packages are never
+ * considered to implement the interface.
+ */
+final class ClassHierarchy {
+    /**
+     * The logger instance.
+     */
+    private static final Log LOG = LogFactory.INSTANCE.getLog(ClassHierarchy.class);
+
+    /**
+     * The ClassLoader to read the class files with.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The internal name of the interface to implement.
+     */
+    private final String interfaceName;
+
+    /**
+     * Whether each type read so far implements the interface, by internal name.
+     */
+    private final Map<String, Boolean> implementations = new HashMap<String, Boolean>();
+
+    /**
+     * Creates a new class hierarchy.
+     *
+     * @param classLoader          The ClassLoader to read the class files with.
+     * @param implementedInterface The interface the candidate classes should implement.
+     */
+    ClassHierarchy(ClassLoader classLoader, Class<?> implementedInterface) {
+        this.classLoader = classLoader;
+        this.interfaceName = implementedInterface.getName().replace('.', '/');
+    }
+
+    /**
+     * Checks whether the class of this class file is a candidate implementation of the interface, i.e. a concrete
+     * class implementing it directly or through its superclasses and superinterfaces.
+     *
+     * @param resourceName The resource name of the class file.
+     * @return {@code true} if the class is a candidate, and should be loaded.
+     */
+    boolean isCandidate(String resourceName) {
+        ClassFileHeader header = readHeader(resourceName);
+        if (header == null) {
+            return true;
+        }
+
+        return header.isConcreteClass() && implementsInterface(header);
+    }
+
+    /**
+     * Checks whether this type implements the interface.
+     *
+     * @param className The internal name of the type.
+     * @return {@code true} if the type (possibly) implements the interface.
+     */
+    private boolean implementsInterface(String className) {
+        if (className.equals(interfaceName)) {
+            return true;
+        }
+        if (className.startsWith("java/")) {
+            return false;
+        }
+
+        Boolean known = implementations.get(className);
+        if (known != null) {
+            return known;
+        }
+
+        // Guard against cycles in malformed class files
+        implementations.put(className, false);
+
+        ClassFileHeader header = readHeader(className + ".class");
+        boolean implementing = header == null || implementsInterface(header);
+        implementations.put(className, implementing);
+        return implementing;
+    }
+
+    /**
+     * Checks whether the type of this class file header implements the interface.
+     *
+     * @param header The class file header.
+     * @return {@code true} if the type (possibly) implements the interface.
+     */
+    private boolean implementsInterface(ClassFileHeader header) {
+        if (header.getSuperClassName() != null && implementsInterface(header.getSuperClassName())) {
+            return true;
+        }
+        for (String name : header.getInterfaceNames()) {
+            if (implementsInterface(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the header of this class file.
+     *
+     * @param resourceName The resource name of the class file.
+     * @return The class file header, or {@code null} if it could not be read.
+     */
+    private ClassFileHeader readHeader(String resourceName) {
+        InputStream inputStream = classLoader.getResourceAsStream(resourceName);
+        if (inputStream == null) {
+            LOG.debug("Unable to find class file: " + resourceName);
+            return null;
+        }
+
+        try {
+            return ClassFileHeader.read(inputStream);
+        } catch (IOException e) {
+            LOG.debug("Unable to read class file header: " + resourceName + " (" + e.getMessage() + ")");
+            return null;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -89,6 +89,22 @@ public class ClassPathResource implements Comparable<ClassPathResource>, Resourc
         }
     }
 
+    public Reader openReader(String encoding) {
+        InputStream inputStream = classLoader.getResourceAsStream(location);
+        if (inputStream == null) {
+            throw new CassandraMigrationException("Unable to obtain inputstream for resource: " + location);
+        }
+        return new InputStreamReader(inputStream, Charset.forName(encoding));
+    }
+
+    public InputStream openStream() {
+        InputStream inputStream = classLoader.getResourceAsStream(location);
+        if (inputStream == null) {
+            throw new CassandraMigrationException("Unable to obtain inputstream for resource: " + location);
+        }
+        return inputStream;
+    }
+
     public byte[] loadAsBytes() {
         try {
             InputStream inputStream = classLoader.getResourceAsStream(location);
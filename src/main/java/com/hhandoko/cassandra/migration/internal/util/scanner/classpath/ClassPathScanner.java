@@ -18,6 +18,7 @@
  */
 package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.net.URISyntaxException;
@@ -25,18 +26,16 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLDecoder;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
 
 import com.hhandoko.cassandra.migration.api.CassandraMigrationException;
-import com.hhandoko.cassandra.migration.internal.util.ClassUtils;
 import com.hhandoko.cassandra.migration.internal.util.FeatureDetector;
 import com.hhandoko.cassandra.migration.internal.util.Location;
 import com.hhandoko.cassandra.migration.internal.util.UrlUtils;
 import com.hhandoko.cassandra.migration.internal.util.logging.Log;
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory;
 import com.hhandoko.cassandra.migration.internal.util.scanner.Resource;
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext;
 
 /**
  * ClassPath scanner.
@@ -53,9 +52,9 @@ public class ClassPathScanner implements ResourceAndClassScanner {
     private final ClassLoader classLoader;
 
     /**
-     * Cache location lookups.
+     * The scan context caching location lookups and resource names, shared by all scanners of a migration run.
      */
-    private final Map<Location, List<URL>> locationUrlCache = new HashMap<Location, List<URL>>();
+    private final ScanContext scanContext;
 
     /**
      * Cache location scanners.
@@ -63,17 +62,23 @@ public class ClassPathScanner implements ResourceAndClassScanner {
     private final Map<String, ClassPathLocationScanner> locationScannerCache = new HashMap<String, ClassPathLocationScanner>();
 
     /**
-     * Cache resource names.
+     * Creates a new Classpath scanner, with its own scan context.
+     *
+     * @param classLoader The ClassLoader for loading migrations on the classpath.
      */
-    private final Map<ClassPathLocationScanner, Map<URL, Set<String>>> resourceNameCache = new HashMap<ClassPathLocationScanner, Map<URL, Set<String>>>();
+    public ClassPathScanner(ClassLoader classLoader) {
+        this(classLoader, new ScanContext());
+    }
 
     /**
      * Creates a new Classpath scanner.
      *
      * @param classLoader The ClassLoader for loading migrations on the classpath.
+     * @param scanContext The scan context shared by all scanners of a migration run.
      */
-    public ClassPathScanner(ClassLoader classLoader) {
+    public ClassPathScanner(ClassLoader classLoader, ScanContext scanContext) {
         this.classLoader = classLoader;
+        this.scanContext = scanContext;
     }
 
     /**
@@ -120,6 +125,9 @@ public class ClassPathScanner implements ResourceAndClassScanner {
      * Scans the classpath for concrete classes under the specified package implementing this interface.
      * Non-instantiable abstract classes are filtered out.
      *
+     * The candidate classes are first found from their class file headers, so that other classes are never loaded.
+     * The matching classes are loaded, but left for the caller to initialize and instantiate.
+     *
      * @param location             The location (package) in the classpath to start scanning.
      *                             Subpackages are also scanned.
      * @param implementedInterface The interface the matching classes should implement.
@@ -132,11 +140,18 @@ public class ClassPathScanner implements ResourceAndClassScanner {
 
         List<Class<?>> classes = new ArrayList<Class<?>>();
 
+        // Only the candidates found from the class file headers are loaded
+        ClassHierarchy classHierarchy = new ClassHierarchy(classLoader, implementedInterface);
+
         Set<String> resourceNames = findResourceNames(location, "", ".class");
         for (String resourceName : resourceNames) {
             String className = toClassName(resourceName);
             Class<?> clazz;
 
+            if (!classHierarchy.isCandidate(resourceName)) {
+                continue;
+            }
+
             try {
                 clazz = classLoader.loadClass(className);
 
@@ -148,8 +163,6 @@ public class ClassPathScanner implements ResourceAndClassScanner {
                     LOG.debug("Skipping non-instantiable class: " + className);
                     continue;
                 }
-
-                ClassUtils.instantiate(className, classLoader);
             } catch (InternalError e) {
                 LOG.debug("Skipping invalid class: " + className);
                 continue;
@@ -160,7 +173,7 @@ public class ClassPathScanner implements ResourceAndClassScanner {
                 LOG.debug("Skipping non-loadable class: " + className);
                 continue;
             } catch (Exception e) {
-                throw new CassandraMigrationException("Unable to instantiate class: " + className, e);
+                throw new CassandraMigrationException("Unable to load class: " + className, e);
             }
 
             classes.add(clazz);
@@ -222,57 +235,18 @@ public class ClassPathScanner implements ResourceAndClassScanner {
                 String scanRoot = UrlUtils.toFilePath(resolvedUrl);
                 LOG.warn("Unable to scan location: " + scanRoot + " (unsupported protocol: " + protocol + ")");
             } else {
-                Set<String> names = resourceNameCache.get(classPathLocationScanner).get(resolvedUrl);
-                if (names == null) {
-                    names = classPathLocationScanner.findResourceNames(location.getPath(), resolvedUrl);
-                    resourceNameCache.get(classPathLocationScanner).put(resolvedUrl, names);
-                }
-                resourceNames.addAll(names);
+                resourceNames.addAll(classPathLocationScanner.findResourceNames(location.getPath(), resolvedUrl));
             }
         }
 
         boolean locationResolved = !locationUrls.isEmpty();
 
         // Make an additional attempt at finding resources in jar files that don't contain directory entries
-        if (classLoader instanceof URLClassLoader) {
-            URLClassLoader urlClassLoader = (URLClassLoader) classLoader;
-            for (URL url : urlClassLoader.getURLs()) {
-                if ("file".equals(url.getProtocol())
-                        && url.getPath().endsWith(".jar")
-                        && !url.getPath().matches(".*" + Pattern.quote("/jre/lib/") + ".*")) {
-                    // All non-system jars on disk
-                    JarFile jarFile;
-                    try {
-                        jarFile = new JarFile(url.toURI().getSchemeSpecificPart());
-                    } catch (URISyntaxException ex) {
-                        // Fallback for URLs that are not valid URIs (should hardly ever happen).
-                        jarFile = new JarFile(url.getPath().substring("file:".length()));
-                    }
-
-                    try {
-                        boolean directoryFound = false;
-                        Enumeration<JarEntry> entries = jarFile.entries();
-                        while (entries.hasMoreElements()) {
-                            if (entries.nextElement().isDirectory()) {
-                                directoryFound = true;
-                                break;
-                            }
-                        }
-                        if (!directoryFound) {
-                            entries = jarFile.entries();
-                            while (entries.hasMoreElements()) {
-                                String entryName = entries.nextElement().getName();
-                                if (entryName.startsWith(location.getPath())) {
-                                    locationResolved = true;
-                                    if (entryName.endsWith(suffix)) {
-                                        resourceNames.add(entryName);
-                                    }
-                                }
-                            }
-                        }
-                    } finally {
-                        jarFile.close();
-                    }
+        for (SortedSet<String> entryNames : findJarEntriesWithoutDirectories(classLoader, location.getPath()).values()) {
+            for (String entryName : entryNames) {
+                locationResolved = true;
+                if (entryName.endsWith(suffix)) {
+                    resourceNames.add(entryName);
                 }
             }
         }
@@ -284,6 +258,50 @@ public class ClassPathScanner implements ResourceAndClassScanner {
         return filterResourceNames(resourceNames, prefix, suffix);
     }
 
+    /**
+     * Finds the entries under this path of the jar files on disk (of this ClassLoader) that don't contain directory
+     * entries, as looking up the path with the ClassLoader does not find such jar files.
+     *
+     * @param classLoader The ClassLoader to find the jar files of.
+     * @param path        The path on the classpath.
+     * @return The entry names under the path, by jar file (only the jar files with such entries).
+     * @throws IOException when reading a jar file failed.
+     */
+    public static Map<File, SortedSet<String>> findJarEntriesWithoutDirectories(ClassLoader classLoader, String path)
+            throws IOException {
+        Map<File, SortedSet<String>> jarEntries = new LinkedHashMap<File, SortedSet<String>>();
+
+        // GUARD: Only the jar files of URLClassLoaders can be listed
+        if (!(classLoader instanceof URLClassLoader)) {
+            return jarEntries;
+        }
+
+        for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+            if ("file".equals(url.getProtocol())
+                    && url.getPath().endsWith(".jar")
+                    && !url.getPath().contains("/jre/lib/")) {
+                // All non-system jars on disk
+                File file;
+                try {
+                    file = new File(url.toURI().getSchemeSpecificPart());
+                } catch (URISyntaxException ex) {
+                    // Fallback for URLs that are not valid URIs (should hardly ever happen).
+                    file = new File(url.getPath().substring("file:".length()));
+                }
+
+                JarFileIndex jarFileIndex = JarFileIndex.forFile(file);
+                if (!jarFileIndex.hasDirectoryEntries()) {
+                    SortedSet<String> entryNames = jarFileIndex.findEntryNames(path);
+                    if (!entryNames.isEmpty()) {
+                        jarEntries.put(file, entryNames);
+                    }
+                }
+            }
+        }
+
+        return jarEntries;
+    }
+
     /**
      * Finds the resources names present at this location and below on the classpath starting with this prefix and
      * ending with this suffix.
@@ -305,11 +323,23 @@ public class ClassPathScanner implements ResourceAndClassScanner {
      * @return The underlying physical URLs.
      * @throws IOException when the lookup fails.
      */
-    private List<URL> getLocationUrlsForPath(Location location) throws IOException {
-        if (locationUrlCache.containsKey(location)) {
-            return locationUrlCache.get(location);
-        }
+    private List<URL> getLocationUrlsForPath(final Location location) throws IOException {
+        return scanContext.getLocationUrls(location, new Callable<List<URL>>() {
+            @Override
+            public List<URL> call() throws IOException {
+                return findLocationUrlsForPath(location);
+            }
+        });
+    }
 
+    /**
+     * Finds the physical location urls for this logical path on the classpath.
+     *
+     * @param location The location on the classpath.
+     * @return The underlying physical URLs.
+     * @throws IOException when the lookup fails.
+     */
+    private List<URL> findLocationUrlsForPath(Location location) throws IOException {
         LOG.debug("Determining location urls for " + location + " using ClassLoader " + classLoader + " ...");
 
         List<URL> locationUrls = new ArrayList<URL>();
@@ -335,8 +365,6 @@ public class ClassPathScanner implements ResourceAndClassScanner {
             }
         }
 
-        locationUrlCache.put(location, locationUrls);
-
         return locationUrls;
     }
 
@@ -362,9 +390,8 @@ public class ClassPathScanner implements ResourceAndClassScanner {
         }
 
         if ("file".equals(protocol)) {
-            FileSystemClassPathLocationScanner locationScanner = new FileSystemClassPathLocationScanner();
+            FileSystemClassPathLocationScanner locationScanner = new FileSystemClassPathLocationScanner(scanContext);
             locationScannerCache.put(protocol, locationScanner);
-            resourceNameCache.put(locationScanner, new HashMap<URL, Set<String>>());
             return locationScanner;
         }
 
@@ -372,9 +399,8 @@ public class ClassPathScanner implements ResourceAndClassScanner {
                 || "zip".equals(protocol) //WebLogic
                 || "wsjar".equals(protocol) //WebSphere
                 ) {
-            JarFileClassPathLocationScanner locationScanner = new JarFileClassPathLocationScanner();
+            JarFileClassPathLocationScanner locationScanner = new JarFileClassPathLocationScanner(scanContext);
             locationScannerCache.put(protocol, locationScanner);
-            resourceNameCache.put(locationScanner, new HashMap<URL, Set<String>>());
             return locationScanner;
         }
 
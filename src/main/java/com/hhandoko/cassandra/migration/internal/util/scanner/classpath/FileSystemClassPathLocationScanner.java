@@ -21,19 +21,45 @@ package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import com.hhandoko.cassandra.migration.internal.util.UrlUtils;
 import com.hhandoko.cassandra.migration.internal.util.logging.Log;
 import com.hhandoko.cassandra.migration.internal.util.logging.LogFactory;
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext;
 
 /**
  * ClassPathLocationScanner for the file system.
+ * Each classpath root folder is only enumerated once per scan context, all the locations within it are looked up in its
+ * index.
  */
 public class FileSystemClassPathLocationScanner implements ClassPathLocationScanner {
     private static final Log LOG = LogFactory.INSTANCE.getLog(FileSystemClassPathLocationScanner.class);
 
+    /**
+     * The scan context holding the classpath root folders indexes.
+     */
+    private final ScanContext scanContext;
+
+    /**
+     * Creates a new file system scanner, with its own scan context.
+     */
+    public FileSystemClassPathLocationScanner() {
+        this(new ScanContext());
+    }
+
+    /**
+     * Creates a new file system scanner.
+     *
+     * @param scanContext The scan context holding the classpath root folders indexes.
+     */
+    public FileSystemClassPathLocationScanner(ScanContext scanContext) {
+        this.scanContext = scanContext;
+    }
+
     public Set<String> findResourceNames(String location, URL locationUrl) throws IOException {
         String filePath = UrlUtils.toFilePath(locationUrl);
         File folder = new File(filePath);
@@ -46,8 +72,17 @@ public class FileSystemClassPathLocationScanner implements ClassPathLocationScan
         if (!classPathRootOnDisk.endsWith(File.separator)) {
             classPathRootOnDisk = classPathRootOnDisk + File.separator;
         }
-        LOG.debug("Scanning starting at classpath root in filesystem: " + classPathRootOnDisk);
-        return findResourceNamesFromFileSystem(classPathRootOnDisk, location, folder);
+
+        final String root = classPathRootOnDisk;
+        NavigableSet<String> index = scanContext.getRootIndex(root, new Callable<NavigableSet<String>>() {
+            @Override
+            public NavigableSet<String> call() throws IOException {
+                LOG.debug("Scanning starting at classpath root in filesystem: " + root);
+                return new TreeSet<String>(findResourceNamesFromFileSystem(root, "", new File(root)));
+            }
+        });
+
+        return ScanContext.findByPrefix(index, location.isEmpty() || location.endsWith("/") ? location : location + "/");
     }
 
     /**
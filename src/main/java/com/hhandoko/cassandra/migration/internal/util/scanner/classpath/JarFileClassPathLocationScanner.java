@@ -18,28 +18,77 @@
  */
 package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
 
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext;
+
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Enumeration;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
  * ClassPathLocationScanner for jar files.
+ * Each jar file is only enumerated once per scan context, all the locations within it are looked up in its index.
  */
 public class JarFileClassPathLocationScanner implements ClassPathLocationScanner {
-    public Set<String> findResourceNames(String location, URL locationUrl) throws IOException {
+    /**
+     * The scan context holding the jar files indexes.
+     */
+    private final ScanContext scanContext;
+
+    /**
+     * Creates a new jar file scanner, with its own scan context.
+     */
+    public JarFileClassPathLocationScanner() {
+        this(new ScanContext());
+    }
+
+    /**
+     * Creates a new jar file scanner.
+     *
+     * @param scanContext The scan context holding the jar files indexes.
+     */
+    public JarFileClassPathLocationScanner(ScanContext scanContext) {
+        this.scanContext = scanContext;
+    }
+
+    public Set<String> findResourceNames(String location, final URL locationUrl) throws IOException {
+        String url = locationUrl.toExternalForm();
+        int separatorIndex = url.lastIndexOf("!/");
+        String root = separatorIndex != -1 ? url.substring(0, separatorIndex) : url;
+
+        NavigableSet<String> index = scanContext.getRootIndex(root, new Callable<NavigableSet<String>>() {
+            @Override
+            public NavigableSet<String> call() throws IOException {
+                return indexJarFile(locationUrl);
+            }
+        });
+
+        String toScan = location + (location.endsWith("/") ? "" : "/");
+        return ScanContext.findByPrefix(index, toScan);
+    }
+
+    /**
+     * Enumerates all the resource names of the jar file represented by this URL.
+     *
+     * @param locationUrl The URL of a location within the jar.
+     * @return The resource names.
+     * @throws IOException when reading the jar file failed.
+     */
+    private NavigableSet<String> indexJarFile(URL locationUrl) throws IOException {
         JarFile jarFile = getJarFromUrl(locationUrl);
 
         try {
             // For Tomcat and non-expanded WARs.
             String prefix = jarFile.getName().toLowerCase().endsWith(".war") ? "WEB-INF/classes/" : "";
-            return findResourceNamesFromJarFile(jarFile, prefix, location);
+            return findResourceNamesFromJarFile(jarFile, prefix);
         } finally {
             jarFile.close();
         }
@@ -85,22 +134,20 @@ public class JarFileClassPathLocationScanner implements ClassPathLocationScanner
     }
 
     /**
-     * Finds all the resource names contained in this directory within this jar file.
+     * Finds all the resource names contained within this jar file.
      *
      * @param jarFile  The jar file.
      * @param prefix   The prefix to ignore within the jar file.
-     * @param location The location to look under.
      * @return The resource names.
      * @throws IOException when reading the jar file failed.
      */
-    private Set<String> findResourceNamesFromJarFile(JarFile jarFile, String prefix, String location) throws IOException {
-        String toScan = prefix + location + (location.endsWith("/") ? "" : "/");
-        Set<String> resourceNames = new TreeSet<String>();
+    private NavigableSet<String> findResourceNamesFromJarFile(JarFile jarFile, String prefix) throws IOException {
+        NavigableSet<String> resourceNames = new TreeSet<String>();
 
         Enumeration<JarEntry> entries = jarFile.entries();
         while (entries.hasMoreElements()) {
             String entryName = entries.nextElement().getName();
-            if (entryName.startsWith(toScan)) {
+            if (entryName.startsWith(prefix)) {
                 resourceNames.add(entryName.substring(prefix.length()));
             }
         }
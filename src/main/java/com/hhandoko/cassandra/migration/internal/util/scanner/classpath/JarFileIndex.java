@@ -0,0 +1,142 @@
+/**
+ * File     : JarFileIndex.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.hhandoko.cassandra.migration.internal.util.scanner.ScanContext;
+
+/**
+ * Index of the entries of a jar file on disk, telling whether the jar file contains directory entries and otherwise
+ * listing its entry names.
+ *
+ * Indexes are cached for the lifetime of the JVM, keyed by the jar file path and validated against its size and last
+ * modified time, so that each jar file is only read once however many locations and suffixes are scanned.
+ */
+final class JarFileIndex {
+    /**
+     * The cached indexes, by jar file absolute path.
+     */
+    private static final ConcurrentMap<String, JarFileIndex> INDEXES = new ConcurrentHashMap<String, JarFileIndex>();
+
+    /**
+     * The size of the jar file when it was indexed.
+     */
+    private final long size;
+
+    /**
+     * The last modified time of the jar file when it was indexed.
+     */
+    private final long lastModified;
+
+    /**
+     * The sorted entry names, or {@code null} if the jar file contains directory entries.
+     */
+    private final NavigableSet<String> entryNames;
+
+    /**
+     * Creates a new jar file index.
+     *
+     * @param size         The size of the jar file when it was indexed.
+     * @param lastModified The last modified time of the jar file when it was indexed.
+     * @param entryNames   The sorted entry names, or {@code null} if the jar file contains directory entries.
+     */
+    private JarFileIndex(long size, long lastModified, NavigableSet<String> entryNames) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.entryNames = entryNames;
+    }
+
+    /**
+     * Retrieves the index of this jar file, reading the jar file only if it has not been indexed yet or has changed
+     * since.
+     *
+     * @param file The jar file.
+     * @return The jar file index.
+     * @throws IOException when reading the jar file failed.
+     */
+    static JarFileIndex forFile(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        JarFileIndex index = INDEXES.get(path);
+        if (index == null || index.size != size || index.lastModified != lastModified) {
+            index = new JarFileIndex(size, lastModified, readEntryNames(file));
+            INDEXES.put(path, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return {@code true} if the jar file contains directory entries.
+     */
+    boolean hasDirectoryEntries() {
+        return entryNames == null;
+    }
+
+    /**
+     * Finds the entry names starting with this prefix, in a jar file without directory entries.
+     *
+     * @param prefix The entry name prefix.
+     * @return The matching entry names (empty if the jar file contains directory entries).
+     */
+    SortedSet<String> findEntryNames(String prefix) {
+        if (entryNames == null) {
+            return Collections.unmodifiableSortedSet(new TreeSet<String>());
+        }
+        return ScanContext.findByPrefix(entryNames, prefix);
+    }
+
+    /**
+     * Reads the entry names of this jar file, in a single pass stopping at the first directory entry.
+     *
+     * @param file The jar file.
+     * @return The sorted entry names, or {@code null} if the jar file contains directory entries.
+     * @throws IOException when reading the jar file failed.
+     */
+    private static NavigableSet<String> readEntryNames(File file) throws IOException {
+        JarFile jarFile = new JarFile(file);
+        try {
+            NavigableSet<String> entryNames = new TreeSet<String>();
+
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    return null;
+                }
+                entryNames.add(entry.getName());
+            }
+
+            return entryNames;
+        } finally {
+            jarFile.close();
+        }
+    }
+}
@@ -77,6 +77,33 @@ public class FileSystemResource implements Resource, Comparable<FileSystemResour
         }
     }
 
+    /**
+     * Opens this resource for reading as a character stream.
+     *
+     * @param encoding The encoding to use.
+     * @return The reader for the contents of the resource.
+     */
+    public Reader openReader(String encoding) {
+        try {
+            return new InputStreamReader(new FileInputStream(location), Charset.forName(encoding));
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to load filesystem resource: " + location.getPath() + " (encoding: " + encoding + ")", e);
+        }
+    }
+
+    /**
+     * Opens this resource for reading as a byte stream.
+     *
+     * @return The stream for the contents of the resource.
+     */
+    public InputStream openStream() {
+        try {
+            return new FileInputStream(location);
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to load filesystem resource: " + location.getPath(), e);
+        }
+    }
+
     /**
      * Loads this resource as a byte array.
      *
@@ -20,8 +20,24 @@ package com.hhandoko.cassandra.migration.internal.util.scanner.filesystem;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import com.hhandoko.cassandra.migration.internal.util.Location;
 import com.hhandoko.cassandra.migration.internal.util.logging.Log;
@@ -30,10 +46,35 @@ import com.hhandoko.cassandra.migration.internal.util.scanner.Resource;
 
 /**
  * FileSystem scanner.
+ *
+ * The location is walked with NIO, using the file attributes read during the walk and filtering the resource names by
+ * prefix and suffix as they are found. Subdirectories can optionally be walked concurrently on a fork-join pool.
  */
 public class FileSystemScanner {
     private static final Log LOG = LogFactory.INSTANCE.getLog(FileSystemScanner.class);
 
+    /**
+     * The number of directories walked concurrently, 1 to walk the location in a single thread.
+     */
+    private final int parallelism;
+
+    /**
+     * Creates a new FileSystem scanner, walking locations in a single thread.
+     */
+    public FileSystemScanner() {
+        this(1);
+    }
+
+    /**
+     * Creates a new FileSystem scanner.
+     *
+     * @param parallelism The number of directories walked concurrently, 1 to walk locations in a single thread. When
+     *                    scanning from a fork-join pool, the directories are walked in that pool instead.
+     */
+    public FileSystemScanner(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     /**
      * Scans the FileSystem for resources under the specified location, starting with the specified prefix and ending with
      * the specified suffix.
@@ -81,67 +122,233 @@ public class FileSystemScanner {
     }
 
     /**
-     * Finds the resources names present at this location and below on the classpath starting with this prefix and
+     * Finds the resources names present at this location and below on the filesystem starting with this prefix and
      * ending with this suffix.
      *
-     * @param path   The path on the classpath to scan.
+     * @param path   The path on the filesystem to scan.
      * @param prefix The filename prefix to match.
      * @param suffix The filename suffix to match.
      * @return The resource names.
      * @throws IOException when scanning this location failed.
      */
     private Set<String> findResourceNames(String path, String prefix, String suffix) throws IOException {
-        Set<String> resourceNames = findResourceNamesFromFileSystem(path, new File(path));
-        return filterResourceNames(resourceNames, prefix, suffix);
+        Path root = Paths.get(path);
+        ResourceNameFilter filter = new ResourceNameFilter(prefix, suffix);
+
+        if (parallelism <= 1) {
+            return walkFileSystem(root, filter);
+        }
+
+        // Walk the folders in the pool of the calling task if any (i.e. migration resolvers run concurrently)
+        FolderScanTask task = new FolderScanTask(root, fileKey(root), filter, null);
+        if (ForkJoinTask.inForkJoinPool()) {
+            return new TreeSet<String>(task.invoke());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return new TreeSet<String>(pool.invoke(task));
+        } finally {
+            pool.shutdown();
+        }
     }
 
     /**
-     * Finds all the resource names contained in this file system folder.
+     * Reads the key uniquely identifying this file, used to detect symbolic link cycles.
      *
-     * @param scanRootLocation The root location of the scan on disk.
-     * @param folder           The folder to look for resources under on disk.
-     * @return The resource names;
+     * @param file The file.
+     * @return The file key, or {@code null} if not available on this file system or the file could not be read.
+     */
+    private static Object fileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Walks this file system folder in a single thread, collecting the matching resource names.
+     *
+     * @param root   The folder to look for resources under on disk.
+     * @param filter The resource name filter.
+     * @return The resource names.
      * @throws IOException when the folder could not be read.
      */
-    @SuppressWarnings("ConstantConditions")
-    private Set<String> findResourceNamesFromFileSystem(String scanRootLocation, File folder) throws IOException {
-        LOG.debug("Scanning for resources in path: " + folder.getPath() + " (" + scanRootLocation + ")");
+    private Set<String> walkFileSystem(Path root, final ResourceNameFilter filter) throws IOException {
+        LOG.debug("Scanning for resources in path: " + root);
 
-        Set<String> resourceNames = new TreeSet<String>();
+        final Set<String> resourceNames = new TreeSet<String>();
 
-        File[] files = folder.listFiles();
-        for (File file : files) {
-            if (file.canRead()) {
-                if (file.isDirectory()) {
-                    resourceNames.addAll(findResourceNamesFromFileSystem(scanRootLocation, file));
-                } else {
-                    resourceNames.add(file.getPath());
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!attributes.isDirectory() && filter.accept(file)) {
+                    resourceNames.add(file.toString());
                 }
+                return FileVisitResult.CONTINUE;
             }
-        }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Unreadable files and folders (or symbolic link cycles) are skipped
+                LOG.debug("Skipping unreadable path: " + file + " (" + e.getMessage() + ")");
+                return FileVisitResult.CONTINUE;
+            }
+        });
 
         return resourceNames;
     }
 
     /**
-     * Filters this list of resource names to only include the ones whose filename matches this prefix and this suffix.
-     *
-     * @param resourceNames The names to filter.
-     * @param prefix        The prefix to match.
-     * @param suffix        The suffix to match.
-     * @return The filtered names set.
+     * Filter of resource names, only accepting readable files whose filename matches a prefix and a suffix.
      */
-    private Set<String> filterResourceNames(Set<String> resourceNames, String prefix, String suffix) {
-        Set<String> filteredResourceNames = new TreeSet<String>();
-        for (String resourceName : resourceNames) {
-            String fileName = resourceName.substring(resourceName.lastIndexOf(File.separator) + 1);
+    private static class ResourceNameFilter {
+        /**
+         * The prefix to match.
+         */
+        private final String prefix;
+
+        /**
+         * The suffix to match.
+         */
+        private final String suffix;
+
+        /**
+         * Creates a new resource name filter.
+         *
+         * @param prefix The prefix to match.
+         * @param suffix The suffix to match.
+         */
+        ResourceNameFilter(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        /**
+         * Checks whether this file matches the prefix and the suffix, and can be read.
+         *
+         * @param file The file to check.
+         * @return {@code true} if it matches.
+         */
+        boolean accept(Path file) {
+            String fileName = file.getFileName().toString();
             if (fileName.startsWith(prefix) && fileName.endsWith(suffix)
                     && (fileName.length() > (prefix + suffix).length())) {
-                filteredResourceNames.add(resourceName);
-            } else {
-                LOG.debug("Filtering out resource: " + resourceName + " (filename: " + fileName + ")");
+                // Only matching files are checked for readability, to save a file system call per file
+                return Files.isReadable(file);
+            }
+
+            LOG.debug("Filtering out resource: " + file + " (filename: " + fileName + ")");
+            return false;
+        }
+    }
+
+    /**
+     * Fork-join task scanning a file system folder, forking a task for each of its subfolders. As when walking the
+     * file tree in a single thread, subfolders that are one of their ancestors (symbolic link cycles) are skipped.
+     */
+    private static class FolderScanTask extends RecursiveTask<Collection<String>> {
+        /**
+         * The folder to look for resources under on disk.
+         */
+        private final Path folder;
+
+        /**
+         * The key uniquely identifying the folder, {@code null} if not available.
+         */
+        private final Object folderKey;
+
+        /**
+         * The resource name filter.
+         */
+        private final ResourceNameFilter filter;
+
+        /**
+         * The task scanning the parent folder, {@code null} for the root folder.
+         */
+        private final FolderScanTask parent;
+
+        /**
+         * Creates a new folder scan task.
+         *
+         * @param folder    The folder to look for resources under on disk.
+         * @param folderKey The key uniquely identifying the folder, {@code null} if not available.
+         * @param filter    The resource name filter.
+         * @param parent    The task scanning the parent folder, {@code null} for the root folder.
+         */
+        FolderScanTask(Path folder, Object folderKey, ResourceNameFilter filter, FolderScanTask parent) {
+            this.folder = folder;
+            this.folderKey = folderKey;
+            this.filter = filter;
+            this.parent = parent;
+        }
+
+        /**
+         * Checks whether this directory is the folder of this task or of one of its ancestors.
+         *
+         * @param directory    The directory to check.
+         * @param directoryKey The key uniquely identifying the directory, {@code null} if not available.
+         * @return {@code true} if the directory is an ancestor, i.e. scanning it would loop.
+         */
+        private boolean isAncestor(Path directory, Object directoryKey) {
+            for (FolderScanTask task = this; task != null; task = task.parent) {
+                if (directoryKey != null && task.folderKey != null) {
+                    if (directoryKey.equals(task.folderKey)) {
+                        return true;
+                    }
+                } else {
+                    try {
+                        if (Files.isSameFile(directory, task.folder)) {
+                            return true;
+                        }
+                    } catch (IOException e) {
+                        // Unreadable ancestors cannot be compared, and are never the same folder
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected Collection<String> compute() {
+            LOG.debug("Scanning for resources in path: " + folder);
+
+            List<String> resourceNames = new ArrayList<String>();
+            List<FolderScanTask> subfolderTasks = new ArrayList<FolderScanTask>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // Broken symbolic links are read as links
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (isAncestor(entry, attributes.fileKey())) {
+                            LOG.debug("Skipping symbolic link cycle: " + entry);
+                            continue;
+                        }
+
+                        FolderScanTask task = new FolderScanTask(entry, attributes.fileKey(), filter, this);
+                        task.fork();
+                        subfolderTasks.add(task);
+                    } else if (filter.accept(entry)) {
+                        resourceNames.add(entry.toString());
+                    }
+                }
+            } catch (IOException e) {
+                // Unreadable folders are skipped
+                LOG.debug("Skipping unreadable path: " + folder + " (" + e.getMessage() + ")");
+            }
+
+            for (FolderScanTask task : subfolderTasks) {
+                resourceNames.addAll(task.join());
             }
+            return resourceNames;
         }
-        return filteredResourceNames;
     }
 }
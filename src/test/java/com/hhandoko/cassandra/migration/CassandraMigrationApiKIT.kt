@@ -21,8 +21,13 @@ package com.hhandoko.cassandra.migration
 import com.datastax.driver.core.exceptions.InvalidQueryException
 import com.datastax.driver.core.querybuilder.QueryBuilder
 import com.datastax.driver.core.querybuilder.QueryBuilder.eq
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
 import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.api.configuration.InstalledRankAllocation
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
 import com.hhandoko.cassandra.migration.internal.info.MigrationInfoDumper
+import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
 import io.kotlintest.matchers.be
 import io.kotlintest.matchers.have
 import java.util.*
@@ -200,6 +205,101 @@ class CassandraMigrationApiKIT : BaseKIT() {
                 }
             }
 
+            "should run successfully with asynchronous migration version table writes" {
+                val scriptsLocations = arrayOf("migration/integ", "migration/integ/java")
+                val cm = CassandraMigration()
+                cm.locations = scriptsLocations
+                cm.keyspaceConfig = getKeyspace()
+                cm.asyncTableWrites = true
+                cm.migrate() shouldBe 6
+
+                val infoService = cm.info()
+                infoService.all().size shouldBe 6
+                for (info in infoService.all()) {
+                    info.state.isApplied shouldBe true
+                    info.installedOn should be a(Date::class)
+                }
+            }
+
+            "should run successfully with asynchronous DML statements execution" {
+                val scriptsLocations = arrayOf("migration/integ", "migration/integ/java")
+                val cm = CassandraMigration()
+                cm.locations = scriptsLocations
+                cm.keyspaceConfig = getKeyspace()
+                cm.asyncWindow = 8
+                cm.migrate() shouldBe 6
+
+                val select = QueryBuilder.select().column("title").column("message").from("contents")
+                select.where(eq("id", 1))
+                val row = getSession().execute(select).one()
+                row.getString("title") shouldBe "foo"
+                row.getString("message") shouldBe "meh"
+            }
+
+            "should run successfully with conditional installed rank allocation" {
+                val scriptsLocations = arrayOf("migration/integ", "migration/integ/java")
+                val cm = CassandraMigration()
+                cm.locations = scriptsLocations
+                cm.keyspaceConfig = getKeyspace()
+                cm.rankAllocation = InstalledRankAllocation.CONDITIONAL
+                cm.migrate() shouldBe 6
+
+                val schemaVersionDAO = SchemaVersionDAO(getSession(), getKeyspace(), MigrationVersion.CURRENT.table, InstalledRankAllocation.CONDITIONAL)
+                val appliedMigrations = schemaVersionDAO.findAppliedMigrations()
+                appliedMigrations.map { it.installedRank }.sortedBy { it } shouldBe listOf(1, 2, 3, 4, 5, 6)
+
+                // NOTE: Recording an already recorded version with a different installed rank is rejected
+                val applied = appliedMigrations.first()
+                shouldThrow<CassandraMigrationException> {
+                    schemaVersionDAO.addAppliedMigration(
+                            AppliedMigration(applied.version!!, applied.description!!, applied.type!!, applied.script!!, applied.checksum, "sa", 0, true)
+                    )
+                }
+
+                // NOTE: An installed rank claimed by a concurrent migration run is skipped
+                val concurrentDAO = SchemaVersionDAO(getSession(), getKeyspace(), MigrationVersion.CURRENT.table, InstalledRankAllocation.CONDITIONAL)
+                concurrentDAO.findAppliedMigrations()
+                val recorded = schemaVersionDAO.addAppliedMigration(
+                        AppliedMigration(MigrationVersion.fromVersion("9.0"), "Nine", MigrationType.CQL, "V9_0__Nine.cql", 9, "sa", 0, true)
+                )
+                val concurrentlyRecorded = concurrentDAO.addAppliedMigration(
+                        AppliedMigration(MigrationVersion.fromVersion("9.1"), "Nine one", MigrationType.CQL, "V9_1__Nine_one.cql", 91, "sa", 0, true)
+                )
+                (concurrentlyRecorded.installedRank!! > recorded.installedRank!!) shouldBe true
+
+                // NOTE: A failed record of the same version is replaced
+                val failed = AppliedMigration(MigrationVersion.fromVersion("9.2"), "Nine two", MigrationType.CQL, "V9_2__Nine_two.cql", 92, "sa", 0, false)
+                schemaVersionDAO.addAppliedMigration(failed)
+                val succeeded = AppliedMigration(MigrationVersion.fromVersion("9.2"), "Nine two", MigrationType.CQL, "V9_2__Nine_two.cql", 92, "sa", 0, true)
+                val replaced = schemaVersionDAO.addAppliedMigration(succeeded)
+
+                val replacedMigrations = schemaVersionDAO.findAppliedMigrations().filter { it.version!!.version == "9.2" }
+                replacedMigrations.size shouldBe 1
+                replacedMigrations[0].isSuccess shouldBe true
+                replacedMigrations[0].installedRank shouldBe replaced.installedRank
+            }
+
+            "should run successfully through a migration client reused across calls" {
+                val scriptsLocations = arrayOf("migration/integ", "migration/integ/java")
+                val cm = CassandraMigration()
+                cm.locations = scriptsLocations
+                cm.keyspaceConfig = getKeyspace()
+
+                val client = MigrationClient(cm, prewarm = true)
+                client.use {
+                    it.info().pending().size shouldBe 6
+                    it.migrate() shouldBe 6
+                    it.validate()
+                    it.migrate() shouldBe 0
+
+                    val infoService = it.info()
+                    infoService.all().size shouldBe 6
+                    infoService.pending().size shouldBe 0
+                    it.session.isClosed shouldBe false
+                }
+                client.session.isClosed shouldBe true
+            }
+
         }
 
     }
@@ -0,0 +1,88 @@
+/**
+ * File     : ConfigurationSnapshotSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.config
+
+import com.hhandoko.cassandra.migration.api.configuration.ConfigurationProperty
+import com.hhandoko.cassandra.migration.api.configuration.ConfigurationSnapshot
+import com.hhandoko.cassandra.migration.api.configuration.KeyspaceConfiguration
+import io.kotlintest.specs.FreeSpec
+
+/**
+ * ConfigurationSnapshot unit tests.
+ */
+class ConfigurationSnapshotSpec : FreeSpec() {
+
+    /**
+     * Clear test-related System properties.
+     */
+    fun clearTestProperties() {
+        System.clearProperty(ConfigurationProperty.KEYSPACE_NAME.namespace)
+    }
+
+    override fun beforeEach() {
+        clearTestProperties()
+    }
+
+    override fun afterEach() {
+        clearTestProperties()
+    }
+
+    init {
+
+        "ConfigurationSnapshot" - {
+
+            "given unchanged configuration" - {
+
+                "should reuse the current snapshot" {
+                    val snapshot = ConfigurationSnapshot.current()
+                    (ConfigurationSnapshot.current() === snapshot) shouldBe true
+                }
+
+                "should load a new current snapshot on reload" {
+                    val snapshot = ConfigurationSnapshot.current()
+                    val reloaded = ConfigurationSnapshot.reload()
+                    (reloaded === snapshot) shouldBe false
+                    (ConfigurationSnapshot.current() === reloaded) shouldBe true
+                }
+
+            }
+
+            "provided System properties values" - {
+
+                "should load a new current snapshot when they change" {
+                    val snapshot = ConfigurationSnapshot.current()
+                    System.setProperty(ConfigurationProperty.KEYSPACE_NAME.namespace, "myspace")
+
+                    (ConfigurationSnapshot.current() === snapshot) shouldBe false
+                    KeyspaceConfiguration().name shouldBe "myspace"
+                }
+
+                "should not affect the configurations created from a previous snapshot" {
+                    val snapshot = ConfigurationSnapshot.current()
+                    System.setProperty(ConfigurationProperty.KEYSPACE_NAME.namespace, "myspace")
+
+                    KeyspaceConfiguration(snapshot).name shouldBe null
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * File     : AppliedMigrationLedgerSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
+import io.kotlintest.specs.FreeSpec
+import java.util.*
+
+/**
+ * AppliedMigrationLedgerSpec unit tests.
+ */
+class AppliedMigrationLedgerSpec : FreeSpec() {
+
+    /**
+     * Creates a new applied migration with this version.
+     *
+     * @param version The version of the migration.
+     * @param success True to denote successful migration application.
+     * @param installedRank The installed rank of the migration.
+     * @return The applied migration.
+     */
+    fun createAppliedMigration(version: String, success: Boolean = true, installedRank: Int = 1): AppliedMigration {
+        return AppliedMigration(
+                1,
+                installedRank,
+                MigrationVersion.fromVersion(version),
+                "abc",
+                MigrationType.CQL,
+                "x",
+                null,
+                Date(),
+                "sa",
+                100,
+                success
+        )
+    }
+
+    init {
+
+        "AppliedMigrationLedger" - {
+
+            "should rank the first version as one" {
+                val ledger = AppliedMigrationLedger(emptyList())
+
+                ledger.versionRank(MigrationVersion.fromVersion("1")) shouldBe 1
+            }
+
+            "should rank versions after all lower or equal versions" {
+                val ledger = AppliedMigrationLedger(listOf(
+                        createAppliedMigration("3"),
+                        createAppliedMigration("1"),
+                        createAppliedMigration("2")
+                ))
+
+                ledger.versionRank(MigrationVersion.fromVersion("0.5")) shouldBe 1
+                ledger.versionRank(MigrationVersion.fromVersion("1.1")) shouldBe 2
+                ledger.versionRank(MigrationVersion.fromVersion("2")) shouldBe 3
+                ledger.versionRank(MigrationVersion.fromVersion("4")) shouldBe 4
+            }
+
+            "should include recorded migrations in subsequent ranks" {
+                val ledger = AppliedMigrationLedger(listOf(createAppliedMigration("1")))
+                ledger.add(createAppliedMigration("3"))
+
+                ledger.versionRank(MigrationVersion.fromVersion("2")) shouldBe 2
+                ledger.versionRank(MigrationVersion.fromVersion("4")) shouldBe 3
+                ledger.appliedMigrations.size shouldBe 2
+            }
+
+            "should allocate the installed rank following the highest recorded one" {
+                val ledger = AppliedMigrationLedger(emptyList())
+                ledger.nextInstalledRank() shouldBe 1
+
+                ledger.add(createAppliedMigration("1", installedRank = 4))
+                ledger.nextInstalledRank() shouldBe 5
+            }
+
+            "should replace a previous record of the same version" {
+                val ledger = AppliedMigrationLedger(listOf(createAppliedMigration("1"), createAppliedMigration("2", false)))
+                ledger.add(createAppliedMigration("2"))
+
+                ledger.versionRank(MigrationVersion.fromVersion("3")) shouldBe 3
+                ledger.appliedMigrations.size shouldBe 2
+                ledger.appliedMigrations.last().isSuccess shouldBe true
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * File     : CqlScriptSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.datastax.driver.core.ResultSet
+import com.datastax.driver.core.ResultSetFuture
+import com.datastax.driver.core.Session
+import com.datastax.driver.core.Statement
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent
+import com.hhandoko.cassandra.migration.internal.util.scanner.filesystem.FileSystemResource
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.doThrow
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import io.kotlintest.matchers.have
+import io.kotlintest.specs.FreeSpec
+import java.io.File
+
+/**
+ * CqlScriptSpec unit tests.
+ */
+class CqlScriptSpec : FreeSpec() {
+
+    /**
+     * The CQL script source with both DDL and DML statements.
+     */
+    val cqlScriptSource = """
+        CREATE TABLE test (id INT PRIMARY KEY, value TEXT);
+        INSERT INTO test (id, value) VALUES (1, 'a');
+        INSERT INTO test (id, value) VALUES (2, 'b');
+        ALTER TABLE test ADD other TEXT;
+        UPDATE test SET other = 'c' WHERE id = 1;
+    """
+
+    /**
+     * Create mocked Session for testing.
+     *
+     * @param future The future returned for asynchronously executed statements.
+     * @return The mocked Session.
+     */
+    fun createSession(future: ResultSetFuture): Session {
+        val resultSet = mock<ResultSet>()
+        return mock {
+            on { execute(any<Statement>()) } doReturn resultSet
+            on { executeAsync(any<Statement>()) } doReturn future
+        }
+    }
+
+    init {
+
+        "CqlScript" - {
+
+            "should read statements one at a time" {
+                val cqlScript = CqlScript("\ufeffINSERT INTO test (id) VALUES (1);\n\n-- comment\nINSERT INTO test (id)\n VALUES (2);\nTRUNCATE test")
+
+                cqlScript.useStatements { it.first() } shouldBe "INSERT INTO test (id) VALUES (1)"
+                val cqlStatements = cqlScript.readStatements()
+                cqlStatements.size shouldBe 3
+                cqlStatements[2] shouldBe "TRUNCATE test"
+            }
+
+            "should read statements from the statement cache" {
+                val directory = createTempDir()
+                try {
+                    val script = File(directory, "V1__Test.cql")
+                    script.writeText("CREATE TABLE test (id INT PRIMARY KEY);\n\n/* comment */\nINSERT INTO test (id)\n  VALUES (1) ;  \n-- end\n")
+                    val cache = CqlStatementCache(File(directory, "cache"), 10)
+                    val resource = FileSystemResource(script.path)
+
+                    val parsed = CqlScript(resource, "UTF-8", 0, statementCache = cache).readStatements()
+                    cache.load(ResourceContent(resource, "UTF-8").fingerprint) shouldBe listOf(
+                            CqlStatementCache.StatementBounds(0, 0, 38),
+                            CqlStatementCache.StatementBounds(3, 4, 13)
+                    )
+
+                    val cached = CqlScript(resource, "UTF-8", 0, statementCache = cache).readStatements()
+                    cached shouldBe parsed
+                    cached shouldBe listOf("CREATE TABLE test (id INT PRIMARY KEY)", "INSERT INTO test (id)\n  VALUES (1) ")
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should not share cached statements between scripts with the same checksum" {
+                val directory = createTempDir()
+                try {
+                    val script = File(directory, "V1__Test.cql")
+                    val cache = CqlStatementCache(File(directory, "cache"), 10)
+                    val resource = FileSystemResource(script.path)
+
+                    // NOTE: Both sources have the same line-based checksum
+                    script.writeText("TRUNCATE a;\nTRUNCATE b;")
+                    CqlScript(resource, "UTF-8", 0, statementCache = cache).readStatements() shouldBe listOf("TRUNCATE a", "TRUNCATE b")
+
+                    script.writeText("TRUNCATE a;TRUNCATE b;")
+                    CqlScript(resource, "UTF-8", 0, statementCache = cache).readStatements() shouldBe listOf("TRUNCATE a;TRUNCATE b")
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should fail when a statement follows the cached statements" {
+                val directory = createTempDir()
+                try {
+                    val script = File(directory, "V1__Test.cql")
+                    script.writeText("TRUNCATE a;\nTRUNCATE b;\n-- end\n")
+                    val cache = CqlStatementCache(File(directory, "cache"), 10)
+                    val resource = FileSystemResource(script.path)
+                    cache.store(ResourceContent(resource, "UTF-8").fingerprint, listOf(CqlStatementCache.StatementBounds(0, 0, 10)))
+
+                    shouldThrow<CassandraMigrationException> {
+                        CqlScript(resource, "UTF-8", 0, statementCache = cache).readStatements()
+                    }
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should classify DML statements" {
+                CqlScript.isDml("INSERT INTO test (id) VALUES (1)") shouldBe true
+                CqlScript.isDml("  update test SET value = 'a' WHERE id = 1") shouldBe true
+                CqlScript.isDml("DELETE FROM test WHERE id = 1") shouldBe true
+                CqlScript.isDml("BEGIN BATCH INSERT INTO test (id) VALUES (1); APPLY BATCH") shouldBe true
+                CqlScript.isDml("CREATE TABLE test (id INT PRIMARY KEY)") shouldBe false
+                CqlScript.isDml("TRUNCATE test") shouldBe false
+            }
+
+            "should execute all statements one at a time by default" {
+                val session = createSession(mock<ResultSetFuture>())
+                CqlScript(cqlScriptSource).execute(session)
+
+                verify(session, times(5)).execute(any<Statement>())
+                verify(session, times(0)).executeAsync(any<Statement>())
+            }
+
+            "should execute DML statements asynchronously and DDL statements one at a time" {
+                val future = mock<ResultSetFuture> {
+                    on { uninterruptibly } doReturn mock<ResultSet>()
+                }
+                val session = createSession(future)
+                CqlScript(cqlScriptSource, asyncWindow = 2).execute(session)
+
+                verify(session, times(2)).execute(any<Statement>())
+                verify(session, times(3)).executeAsync(any<Statement>())
+                verify(future, times(3)).uninterruptibly
+            }
+
+            "should report the first failed statement" {
+                val future = mock<ResultSetFuture> {
+                    on { uninterruptibly } doThrow RuntimeException("Write timeout")
+                }
+                val session = createSession(future)
+
+                val exception = shouldThrow<CassandraMigrationException> {
+                    CqlScript(cqlScriptSource, asyncWindow = 2).execute(session)
+                }
+                exception.message!! should have substring "statement #2"
+                verify(session, times(1)).execute(any<Statement>())
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * File     : CqlStatementBuilderSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import io.kotlintest.specs.FreeSpec
+
+/**
+ * CqlStatementBuilderSpec unit tests.
+ */
+class CqlStatementBuilderSpec : FreeSpec() {
+
+    /**
+     * Create a statement builder with these lines added.
+     *
+     * @param lines The lines to add.
+     * @return The statement builder.
+     */
+    fun build(vararg lines: String): CqlStatementBuilder {
+        val builder = CqlStatementBuilder()
+        lines.forEach { builder.addLine(it) }
+        return builder
+    }
+
+    init {
+
+        "CqlStatementBuilder" - {
+
+            "should terminate statement on delimiter" {
+                val builder = build("INSERT INTO test (id, value)", "  VALUES (1, 'a');  ")
+
+                builder.isTerminated shouldBe true
+                builder.cqlStatement shouldBe "INSERT INTO test (id, value)\n  VALUES (1, 'a')"
+            }
+
+            "should not terminate statement on delimiter inside string literal" {
+                val builder = build("INSERT INTO test (id, value) VALUES (1, 'a;", "b '';")
+
+                builder.isTerminated shouldBe false
+                builder.endWithOpenMultilineStringLiteral() shouldBe true
+
+                builder.addLine("c');")
+                builder.isTerminated shouldBe true
+                builder.endWithOpenMultilineStringLiteral() shouldBe false
+            }
+
+            "should ignore escaped quotes" {
+                val builder = build("INSERT INTO test (id, value) VALUES (1, 'it''s');")
+
+                builder.isTerminated shouldBe true
+                builder.endWithOpenMultilineStringLiteral() shouldBe false
+            }
+
+            "should not terminate statement on delimiter inside comments" {
+                build("INSERT INTO test (id) VALUES (1); -- comment;").isTerminated shouldBe false
+                build("INSERT INTO test (id) VALUES (1); --comment").isTerminated shouldBe false
+                build("/* INSERT INTO test (id) VALUES (1);").isTerminated shouldBe false
+                build("/* comment", "INSERT INTO test (id) VALUES (1);").isTerminated shouldBe false
+            }
+
+            "should discard comments only" {
+                build("-- comment").canDiscard() shouldBe true
+                build("/* comment */").canDiscard() shouldBe true
+                build("/* multi-line", "comment */").canDiscard() shouldBe true
+                build("/* multi-line").canDiscard() shouldBe false
+                build("/* comment */ TRUNCATE test").canDiscard() shouldBe false
+            }
+
+            "should be reusable after reset" {
+                val builder = build("/* comment", "TRUNCATE test;")
+                builder.reset()
+
+                builder.isEmpty shouldBe true
+                builder.addLine("\tTRUNCATE test ;")
+                builder.isTerminated shouldBe true
+                builder.cqlStatement shouldBe "\tTRUNCATE test "
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * File     : CqlStatementCacheSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.hhandoko.cassandra.migration.internal.dbsupport.CqlStatementCache.StatementBounds
+import com.hhandoko.cassandra.migration.internal.util.scanner.ResourceContent.Fingerprint
+import io.kotlintest.specs.FreeSpec
+import java.io.File
+
+/**
+ * CqlStatementCacheSpec unit tests.
+ */
+class CqlStatementCacheSpec : FreeSpec() {
+
+    /**
+     * The statement boundaries to cache.
+     */
+    val bounds = listOf(StatementBounds(0, 0, 10), StatementBounds(2, 4, 0))
+
+    /**
+     * Create the fingerprint of a script source.
+     *
+     * @param id The script source identifier, used to derive its digest.
+     * @param byteLength The script source length, in bytes.
+     * @param lineCount The number of lines in the script source.
+     * @param charset The charset the script source is decoded with.
+     * @return The script source fingerprint.
+     */
+    fun fingerprint(id: Int, byteLength: Long = 64, lineCount: Int = 5, charset: String = "UTF-8"): Fingerprint {
+        return Fingerprint(id, "%064x".format(id), byteLength, lineCount, charset)
+    }
+
+    /**
+     * @return The cache entry files in this directory.
+     */
+    fun entries(directory: File): List<String> {
+        return directory.listFiles().map { it.name }.filter { it.endsWith(".stmts") }
+    }
+
+    init {
+
+        "CqlStatementCache" - {
+
+            "should load stored statement boundaries" {
+                val directory = createTempDir()
+                try {
+                    val cache = CqlStatementCache(File(directory, "cache"), 10)
+                    cache.load(fingerprint(42)) shouldBe null
+
+                    cache.store(fingerprint(42), bounds)
+
+                    cache.load(fingerprint(42)) shouldBe bounds
+                    CqlStatementCache(File(directory, "cache"), 10).load(fingerprint(42)) shouldBe bounds
+                    cache.load(fingerprint(43)) shouldBe null
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should ignore entries for a script source of a different length, line count or charset" {
+                val directory = createTempDir()
+                try {
+                    val cache = CqlStatementCache(directory, 10)
+                    cache.store(fingerprint(42), bounds)
+
+                    cache.load(fingerprint(42, byteLength = 65)) shouldBe null
+                    cache.load(fingerprint(42, lineCount = 6)) shouldBe null
+                    cache.load(fingerprint(42, charset = "ISO-8859-1")) shouldBe null
+                    cache.load(fingerprint(42)) shouldBe bounds
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should ignore unreadable entries" {
+                val directory = createTempDir()
+                try {
+                    val cache = CqlStatementCache(directory, 10)
+                    cache.store(fingerprint(42), bounds)
+                    entries(directory).forEach { File(directory, it).writeBytes(byteArrayOf(0x43, 0x51)) }
+
+                    cache.load(fingerprint(42)) shouldBe null
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should evict the least recently used entries" {
+                val directory = createTempDir()
+                try {
+                    val cache = CqlStatementCache(directory, 2)
+                    cache.store(fingerprint(1), bounds)
+                    cache.store(fingerprint(2), bounds)
+                    entries(directory).forEach { File(directory, it).setLastModified(System.currentTimeMillis() - 60000) }
+                    cache.load(fingerprint(1)) shouldBe bounds
+
+                    cache.store(fingerprint(3), bounds)
+
+                    entries(directory).size shouldBe 2
+                    cache.load(fingerprint(1)) shouldBe bounds
+                    cache.load(fingerprint(2)) shouldBe null
+                    cache.load(fingerprint(3)) shouldBe bounds
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * File     : SchemaAgreementSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.datastax.driver.core.Cluster
+import com.datastax.driver.core.ExecutionInfo
+import com.datastax.driver.core.Metadata
+import com.datastax.driver.core.Session
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import io.kotlintest.specs.FreeSpec
+
+/**
+ * SchemaAgreementSpec unit tests.
+ */
+class SchemaAgreementSpec : FreeSpec() {
+
+    /**
+     * Create mocked Session for testing.
+     *
+     * @param metadata The cluster metadata.
+     * @return The mocked Session.
+     */
+    fun createSession(metadata: Metadata): Session {
+        val cluster = mock<Cluster> {
+            on { getMetadata() } doReturn metadata
+        }
+        return mock {
+            on { getCluster() } doReturn cluster
+        }
+    }
+
+    init {
+
+        "SchemaAgreement" - {
+
+            "should not check the cluster metadata when the driver confirmed schema agreement" {
+                val metadata = mock<Metadata>()
+                val executionInfo = mock<ExecutionInfo> {
+                    on { isSchemaInAgreement } doReturn true
+                }
+                val schemaAgreement = SchemaAgreement(backoffMillis = 1, deadlineMillis = 1000)
+                schemaAgreement.await(createSession(metadata), executionInfo)
+
+                verify(metadata, times(0)).checkSchemaAgreement()
+            }
+
+            "should poll the cluster metadata until schema agreement" {
+                val metadata = mock<Metadata> {
+                    on { checkSchemaAgreement() } doReturn listOf(false, false, true)
+                }
+                val schemaAgreement = SchemaAgreement(backoffMillis = 1, deadlineMillis = 1000)
+                schemaAgreement.await(createSession(metadata))
+
+                verify(metadata, times(3)).checkSchemaAgreement()
+            }
+
+            "should fail when schema agreement is not reached within the deadline" {
+                val metadata = mock<Metadata> {
+                    on { checkSchemaAgreement() } doReturn false
+                }
+                val schemaAgreement = SchemaAgreement(backoffMillis = 1, deadlineMillis = 50)
+
+                shouldThrow<CassandraMigrationException> { schemaAgreement.await(createSession(metadata)) }
+                (schemaAgreement.waitMillis >= 50) shouldBe true
+            }
+
+        }
+
+    }
+
+}
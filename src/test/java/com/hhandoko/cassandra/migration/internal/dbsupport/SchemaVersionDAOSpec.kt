@@ -0,0 +1,90 @@
+/**
+ * File     : SchemaVersionDAOSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.dbsupport
+
+import com.datastax.driver.core.Cluster
+import com.datastax.driver.core.Host
+import com.datastax.driver.core.KeyspaceMetadata
+import com.datastax.driver.core.Metadata
+import com.datastax.driver.core.ResultSet
+import com.datastax.driver.core.Row
+import com.datastax.driver.core.Session
+import com.datastax.driver.core.Statement
+import com.hhandoko.cassandra.migration.api.configuration.KeyspaceConfiguration
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import io.kotlintest.specs.FreeSpec
+
+/**
+ * SchemaVersionDAOSpec unit tests.
+ */
+class SchemaVersionDAOSpec : FreeSpec() {
+
+    /**
+     * Create the schema version DAO over a mocked Session for testing.
+     *
+     * @param keyspace The keyspace metadata known to the driver.
+     * @param systemSchemaTables The table names returned by the `system_schema.tables` lookup.
+     * @return The schema version DAO.
+     */
+    fun createDAO(keyspace: KeyspaceMetadata, systemSchemaTables: List<String>): SchemaVersionDAO {
+        val metadata = mock<Metadata> {
+            on { getKeyspace(any()) } doReturn keyspace
+            on { allHosts } doReturn setOf(mock<Host>())
+        }
+        val cluster = mock<Cluster> {
+            on { getMetadata() } doReturn metadata
+        }
+        val rows = systemSchemaTables.map { tableName -> mock<Row> { on { getString("table_name") } doReturn tableName } }
+        val resultSet = mock<ResultSet> {
+            on { iterator() } doReturn rows.toMutableList().iterator()
+        }
+        val session = mock<Session> {
+            on { getCluster() } doReturn cluster
+            on { execute(any<Statement>()) } doReturn resultSet
+        }
+
+        val keyspaceConfig = KeyspaceConfiguration()
+        keyspaceConfig.name = "test"
+        return SchemaVersionDAO(session, keyspaceConfig, "cassandra_migration_version")
+    }
+
+    init {
+
+        "SchemaVersionDAO" - {
+
+            "should confirm missing tables in system_schema when the cluster metadata does not show them" {
+                val keyspace = mock<KeyspaceMetadata>()
+                val dao = createDAO(keyspace, listOf("cassandra_migration_version", "cassandra_migration_version_counts"))
+
+                dao.tablesExist() shouldBe true
+            }
+
+            "should not find the tables missing from both the cluster metadata and system_schema" {
+                val keyspace = mock<KeyspaceMetadata>()
+                val dao = createDAO(keyspace, emptyList())
+
+                dao.tablesExist() shouldBe false
+            }
+
+        }
+
+    }
+
+}
@@ -228,6 +228,45 @@ class MigrationInfoServiceSpec : FreeSpec() {
                 migrationInfoService.pending().size shouldBe 0
             }
 
+            "should partition migrations info by state once per refresh" {
+                val migrationInfoService = MigrationInfoServiceImpl(
+                        createMigrationResolver(createAvailableMigration("1"), createAvailableMigration("2"), createAvailableMigration("3")),
+                        createSchemaVersionDAO(createAppliedMigration("1"), createAppliedMigration("4")),
+                        MigrationVersion.LATEST,
+                        outOfOrder = true,
+                        pendingOrFuture = true
+                )
+                migrationInfoService.refresh()
+
+                migrationInfoService.pending().map { it.version.toString() } shouldBe listOf("2", "3")
+                migrationInfoService.applied().map { it.version.toString() } shouldBe listOf("1", "4")
+                migrationInfoService.resolved().map { it.version.toString() } shouldBe listOf("1", "2", "3")
+                migrationInfoService.future().map { it.version.toString() } shouldBe listOf("4")
+                migrationInfoService.failed().size shouldBe 0
+                (migrationInfoService.pending() === migrationInfoService.pending()) shouldBe true
+
+                val pending = migrationInfoService.pending()
+                migrationInfoService.refresh()
+
+                (migrationInfoService.pending() === pending) shouldBe false
+                migrationInfoService.pending().size shouldBe 2
+            }
+
+            "should merge unsorted applied migrations info" {
+                val migrationInfoService = MigrationInfoServiceImpl(
+                        createMigrationResolver(createAvailableMigration("1"), createAvailableMigration("2"), createAvailableMigration("3")),
+                        createSchemaVersionDAO(createAppliedMigration("3"), createAppliedMigration("1")),
+                        MigrationVersion.LATEST,
+                        outOfOrder = false,
+                        pendingOrFuture = true
+                )
+                migrationInfoService.refresh()
+
+                migrationInfoService.all().map { it.version.toString() } shouldBe listOf("1", "2", "3")
+                migrationInfoService.all().map { it.state } shouldBe listOf(MigrationState.SUCCESS, MigrationState.IGNORED, MigrationState.SUCCESS)
+                migrationInfoService.current()!!.version.toString() shouldBe "3"
+            }
+
             "should read two applied and one future migrations info" {
                 val migrationInfoService = MigrationInfoServiceImpl(
                         createMigrationResolver(createAvailableMigration("1")),
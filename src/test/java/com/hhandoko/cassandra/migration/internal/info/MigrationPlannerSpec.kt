@@ -0,0 +1,160 @@
+/**
+ * File     : MigrationPlannerSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.info
+
+import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.api.MigrationVersion
+import com.hhandoko.cassandra.migration.api.resolver.MigrationResolver
+import com.hhandoko.cassandra.migration.api.resolver.ResolvedMigration
+import com.hhandoko.cassandra.migration.internal.dbsupport.SchemaVersionDAO
+import com.hhandoko.cassandra.migration.internal.metadatatable.AppliedMigration
+import com.hhandoko.cassandra.migration.internal.resolver.ResolvedMigrationImpl
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import io.kotlintest.specs.FreeSpec
+import java.util.*
+
+/**
+ * MigrationPlannerSpec unit tests.
+ */
+class MigrationPlannerSpec : FreeSpec() {
+
+    /**
+     * Create a new available migration with the given version.
+     *
+     * @param version The migration version.
+     * @return The available migration.
+     */
+    fun createAvailableMigration(version: String): ResolvedMigration {
+        val migration = ResolvedMigrationImpl()
+        migration.version = MigrationVersion.fromVersion(version)
+        migration.description = "abc"
+        migration.script = "x"
+        migration.type = MigrationType.CQL
+        return migration
+    }
+
+    /**
+     * Creates a new applied migration with this version.
+     *
+     * @param version The version of the migration.
+     * @param installedRank The installed rank of the migration.
+     * @return The applied migration.
+     */
+    fun createAppliedMigration(version: String, installedRank: Int = version.toInt()): AppliedMigration {
+        return AppliedMigration(
+                version.toInt(),
+                installedRank,
+                MigrationVersion.fromVersion(version),
+                "abc",
+                MigrationType.CQL,
+                "x",
+                null,
+                Date(),
+                "sa",
+                100,
+                success = true
+        )
+    }
+
+    /**
+     * Creates a MigrationResolver for testing.
+     *
+     * @param resolvedMigrations The resolved migrations.
+     * @return The migration resolver.
+     */
+    fun createMigrationResolver(vararg resolvedMigrations: ResolvedMigration): MigrationResolver {
+        return object : MigrationResolver {
+            override fun resolveMigrations(): List<ResolvedMigration> {
+                return resolvedMigrations.toList()
+            }
+        }
+    }
+
+    /**
+     * Create mocked SchemaVersionDAO for testing.
+     *
+     * @return The mocked SchemaVersionDAO.
+     */
+    fun createSchemaVersionDAO(vararg appliedMigrations: AppliedMigration): SchemaVersionDAO {
+        val migrations = appliedMigrations.toList()
+        return mock {
+            on { findAppliedMigrations() } doReturn migrations
+        }
+    }
+
+    init {
+
+        "MigrationPlanner" - {
+
+            "should plan all pending migrations up front" {
+                val dao = createSchemaVersionDAO(createAppliedMigration("1"))
+                val planner = MigrationPlanner(
+                        createMigrationResolver(createAvailableMigration("1"), createAvailableMigration("2"), createAvailableMigration("3")),
+                        dao,
+                        MigrationVersion.LATEST,
+                        outOfOrder = false
+                )
+                planner.refresh()
+
+                planner.currentVersion.toString() shouldBe "1"
+                planner.nextPending!!.version.toString() shouldBe "2"
+                planner.info.pending().size shouldBe 2
+            }
+
+            "should update the in-memory view without re-reading applied migrations" {
+                val dao = createSchemaVersionDAO(createAppliedMigration("1"))
+                val planner = MigrationPlanner(
+                        createMigrationResolver(createAvailableMigration("1"), createAvailableMigration("2"), createAvailableMigration("3")),
+                        dao,
+                        MigrationVersion.LATEST,
+                        outOfOrder = false
+                )
+                planner.refresh()
+
+                planner.recordApplied(createAppliedMigration("2")) shouldBe false
+                planner.recordApplied(createAppliedMigration("3")) shouldBe false
+
+                planner.nextPending shouldBe null
+                planner.currentVersion.toString() shouldBe "3"
+                planner.info.applied().size shouldBe 3
+                verify(dao, times(1)).findAppliedMigrations()
+            }
+
+            "should re-read applied migrations when a concurrent writer is detected" {
+                val dao = createSchemaVersionDAO(createAppliedMigration("1"))
+                val planner = MigrationPlanner(
+                        createMigrationResolver(createAvailableMigration("1"), createAvailableMigration("2"), createAvailableMigration("3")),
+                        dao,
+                        MigrationVersion.LATEST,
+                        outOfOrder = false
+                )
+                planner.refresh()
+
+                planner.recordApplied(createAppliedMigration("2", installedRank = 3)) shouldBe true
+
+                verify(dao, times(2)).findAppliedMigrations()
+            }
+
+        }
+
+    }
+
+}
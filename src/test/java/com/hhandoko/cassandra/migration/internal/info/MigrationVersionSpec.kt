@@ -130,6 +130,16 @@ class MigrationVersionSpec : FreeSpec() {
                     MigrationVersion.fromVersion(raw).version shouldEqual raw
                 }
 
+                "should compare with Long version parts" {
+                    val maxLong = MigrationVersion.fromVersion("1.9223372036854775807")
+                    val overflow = MigrationVersion.fromVersion("1.9223372036854775808")
+
+                    (maxLong < overflow) shouldBe true
+                    (overflow > maxLong) shouldBe true
+                    overflow shouldEqual MigrationVersion.fromVersion("1.09223372036854775808.0")
+                    overflow.hashCode() shouldEqual MigrationVersion.fromVersion("1.09223372036854775808.0").hashCode()
+                }
+
             }
 
             "provided invalid constructor version input" - {
@@ -176,6 +186,11 @@ class MigrationVersionSpec : FreeSpec() {
                     MigrationVersion.fromVersion("1.2.3").version shouldBe "1.2.3"
                 }
 
+                "should return the same instance for the same version" {
+                    (MigrationVersion.fromVersion("1.2.3") === MigrationVersion.fromVersion("1.2.3")) shouldBe true
+                    (MigrationVersion.fromVersion("1_2_3") === MigrationVersion.fromVersion("1.2.3")) shouldBe false
+                }
+
                 "should compare equals EMPTY value" { MigrationVersion.EMPTY shouldEqual MigrationVersion.EMPTY }
                 "should compare equals LATEST value" { MigrationVersion.LATEST shouldEqual MigrationVersion.LATEST }
                 "should compare equals CURRENT value" { MigrationVersion.CURRENT shouldEqual MigrationVersion.CURRENT }
@@ -72,6 +72,62 @@ class CompositeMigrationResolverSpec : FreeSpec() {
                 migrations[2].description shouldBe "Add contents table"
             }
 
+            "should resolve migrations in multiple locations concurrently" {
+                val resolver = CompositeMigrationResolver(
+                        Thread.currentThread().contextClassLoader,
+                        Locations("migration/subdir/dir2", "migration.outoforder", "migration/subdir/dir1"),
+                        "UTF-8",
+                        timeout = 0,
+                        parallelism = 4
+                )
+                val migrations = resolver.resolveMigrations()
+
+                migrations.size shouldBe 3
+
+                migrations[0].description shouldBe "First"
+                migrations[1].description shouldBe "Late arrival"
+                migrations[2].description shouldBe "Add contents table"
+            }
+
+            "should collect migrations concurrently in the order of the resolvers" {
+                val resolver1 = object : MigrationResolver {
+                    override fun resolveMigrations(): List<ResolvedMigration> {
+                        Thread.sleep(50)
+                        return arrayListOf(createResolvedMigration(MigrationType.CQL, "2", "Description2", "Migration2", 1234))
+                    }
+                }
+                val resolver2 = object : MigrationResolver {
+                    override fun resolveMigrations(): List<ResolvedMigration> {
+                        return arrayListOf(
+                                createResolvedMigration(MigrationType.JAVA_DRIVER, "1", "Description", "Migration1", 123),
+                                createResolvedMigration(MigrationType.CQL, "2", "Description2", "Migration2", 1234)
+                        )
+                    }
+                }
+                val migrations = CompositeMigrationResolver.collectMigrations(arrayListOf(resolver1, resolver2), parallelism = 2)
+
+                migrations.map { it.script } shouldBe listOf("Migration2", "Migration1")
+            }
+
+            "should collect migrations of caller resolvers on the calling thread, after the other resolvers" {
+                val callingThread = Thread.currentThread()
+                val resolver = object : MigrationResolver {
+                    override fun resolveMigrations(): List<ResolvedMigration> {
+                        (Thread.currentThread() !== callingThread) shouldBe true
+                        return arrayListOf(createResolvedMigration(MigrationType.CQL, "2", "Description2", "Migration2", 1234))
+                    }
+                }
+                val customResolver = object : MigrationResolver {
+                    override fun resolveMigrations(): List<ResolvedMigration> {
+                        Thread.currentThread() shouldBe callingThread
+                        return arrayListOf(createResolvedMigration(MigrationType.JAVA_DRIVER, "1", "Description", "Migration1", 123))
+                    }
+                }
+                val migrations = CompositeMigrationResolver.collectMigrations(arrayListOf(resolver, resolver), 2, arrayListOf(customResolver))
+
+                migrations.map { it.script } shouldBe listOf("Migration2", "Migration1")
+            }
+
             "should collect migrations and eliminate duplicates" {
                 val resolver = object : MigrationResolver {
                     override fun resolveMigrations(): List<ResolvedMigration> {
@@ -0,0 +1,192 @@
+/**
+ * File     : MigrationIndexSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.resolver
+
+import com.datastax.driver.core.Session
+import com.hhandoko.cassandra.migration.MigrationIndexGenerator
+import com.hhandoko.cassandra.migration.api.CassandraMigrationException
+import com.hhandoko.cassandra.migration.api.MigrationType
+import com.hhandoko.cassandra.migration.internal.resolver.cql.CqlMigrationResolver
+import com.hhandoko.cassandra.migration.internal.util.Location
+import com.hhandoko.cassandra.migration.internal.util.Locations
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.verifyZeroInteractions
+import io.kotlintest.specs.FreeSpec
+import java.io.File
+import java.io.StringReader
+import java.io.StringWriter
+import java.net.URLClassLoader
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+/**
+ * MigrationIndexSpec unit tests.
+ */
+class MigrationIndexSpec : FreeSpec() {
+
+    /**
+     * Creates a CQL migration script in this directory.
+     *
+     * @param directory The classpath root directory.
+     * @param path The script path within the directory.
+     */
+    fun createScript(directory: File, path: String) {
+        val script = File(directory, path)
+        script.parentFile.mkdirs()
+        script.writeText("CREATE TABLE test (id int PRIMARY KEY);\n")
+    }
+
+    init {
+
+        "MigrationIndex" - {
+
+            "should read the written entries" {
+                val index = MigrationIndex(listOf(
+                        MigrationIndex.Entry(MigrationType.CQL, "1.1", 42, "sub/V1_1__First.cql", "First"),
+                        MigrationIndex.Entry(MigrationType.JAVA_DRIVER, "2", null, "db.V2__Second", "Tab\tand\nnew line \\")
+                ))
+
+                val writer = StringWriter()
+                index.write(writer)
+
+                MigrationIndex.read(StringReader(writer.toString()))!!.entries shouldBe index.entries
+            }
+
+            "should not read an unsupported index format" {
+                MigrationIndex.read(StringReader("cassandra-migration-index 0\n")) shouldBe null
+                MigrationIndex.read(StringReader("")) shouldBe null
+            }
+
+            "should only load the index of classpath locations" {
+                val directory = createTempDir()
+                try {
+                    createScript(directory, "db/idx/V1__First.cql")
+                    MigrationIndexGenerator.generate(directory, Locations("db/idx"), "UTF-8")
+                    val classLoader = URLClassLoader(arrayOf(directory.toURI().toURL()))
+
+                    MigrationIndex.load(classLoader, Location("db/idx"))!!.entries.size shouldBe 1
+                    MigrationIndex.load(classLoader, Location("db/none")) shouldBe null
+                    MigrationIndex.load(classLoader, Location("filesystem:${directory.path}/db/idx")) shouldBe null
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should resolve the generated index instead of scanning" {
+                val directory = createTempDir()
+                try {
+                    createScript(directory, "db/idx/V1__First.cql")
+                    createScript(directory, "db/idx/sub/V2__Second.cql")
+                    MigrationIndexGenerator.generate(directory, Locations("db/idx"), "UTF-8")
+                    createScript(directory, "db/idx/V3__Unindexed.cql")
+
+                    val classLoader = URLClassLoader(arrayOf(directory.toURI().toURL()))
+                    val scanned = CqlMigrationResolver(classLoader, Location("db/idx"), "UTF-8", 0).resolveMigrations()
+                    val resolved = CompositeMigrationResolver(classLoader, Locations("db/idx"), "UTF-8", 0).resolveMigrations()
+
+                    scanned.size shouldBe 3
+                    resolved.size shouldBe 2
+                    resolved.forEachIndexed { i, migration ->
+                        migration.version shouldBe scanned[i].version
+                        migration.description shouldBe scanned[i].description
+                        migration.script shouldBe scanned[i].script
+                        migration.checksum shouldBe scanned[i].checksum
+                        migration.physicalLocation shouldBe scanned[i].physicalLocation
+                    }
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should scan the location when a classpath root has no index" {
+                val indexed = createTempDir()
+                val unindexed = createTempDir()
+                try {
+                    createScript(indexed, "db/idx/V1__First.cql")
+                    MigrationIndexGenerator.generate(indexed, Locations("db/idx"), "UTF-8")
+                    createScript(unindexed, "db/idx/V2__Second.cql")
+
+                    val classLoader = URLClassLoader(arrayOf(indexed.toURI().toURL(), unindexed.toURI().toURL()))
+
+                    MigrationIndex.load(classLoader, Location("db/idx")) shouldBe null
+                    CompositeMigrationResolver(classLoader, Locations("db/idx"), "UTF-8", 0).resolveMigrations().size shouldBe 2
+                } finally {
+                    indexed.deleteRecursively()
+                    unindexed.deleteRecursively()
+                }
+            }
+
+            "should scan the location when a jar without directory entries has no index" {
+                val indexed = createTempDir()
+                val unindexed = createTempDir()
+                try {
+                    createScript(indexed, "db/idx/V1__First.cql")
+                    MigrationIndexGenerator.generate(indexed, Locations("db/idx"), "UTF-8")
+                    val jar = File(unindexed, "unindexed.jar")
+                    JarOutputStream(jar.outputStream()).use {
+                        it.putNextEntry(JarEntry("db/idx/V2__Second.cql"))
+                        it.write("CREATE TABLE test (id int PRIMARY KEY);\n".toByteArray())
+                        it.closeEntry()
+                    }
+
+                    val classLoader = URLClassLoader(arrayOf(indexed.toURI().toURL(), jar.toURI().toURL()))
+
+                    MigrationIndex.load(classLoader, Location("db/idx")) shouldBe null
+                    CompositeMigrationResolver(classLoader, Locations("db/idx"), "UTF-8", 0).resolveMigrations().size shouldBe 2
+                } finally {
+                    indexed.deleteRecursively()
+                    unindexed.deleteRecursively()
+                }
+            }
+
+            "should not execute an indexed script edited after the index was generated" {
+                val directory = createTempDir()
+                try {
+                    createScript(directory, "db/idx/V1__First.cql")
+                    MigrationIndexGenerator.generate(directory, Locations("db/idx"), "UTF-8")
+                    File(directory, "db/idx/V1__First.cql").writeText("CREATE TABLE edited (id int PRIMARY KEY);\n")
+
+                    val classLoader = URLClassLoader(arrayOf(directory.toURI().toURL()))
+                    val resolved = CompositeMigrationResolver(classLoader, Locations("db/idx"), "UTF-8", 0).resolveMigrations()
+
+                    val session = mock<Session>()
+                    shouldThrow<CassandraMigrationException> { resolved[0].executor!!.execute(session) }
+                    verifyZeroInteractions(session)
+                } finally {
+                    directory.deleteRecursively()
+                }
+            }
+
+            "should resolve indexed Java migrations" {
+                val className = "com.hhandoko.cassandra.migration.internal.resolver.java.dummy.V2__InterfaceBasedMigration"
+                val index = MigrationIndex(listOf(MigrationIndex.Entry(MigrationType.JAVA_DRIVER, "2", 0, className, "Interface Based Migration")))
+                val location = Location("com/hhandoko/cassandra/migration/internal/resolver/java/dummy")
+
+                val migrations = IndexedMigrationResolver(Thread.currentThread().contextClassLoader, location, index, "UTF-8", 0).resolveMigrations()
+
+                migrations.size shouldBe 1
+                migrations[0].type shouldBe MigrationType.JAVA_DRIVER
+                migrations[0].script shouldBe className
+                (migrations[0].executor != null) shouldBe true
+            }
+
+        }
+
+    }
+
+}
@@ -23,6 +23,8 @@ import com.hhandoko.cassandra.migration.internal.util.Location
 import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathResource
 import com.hhandoko.cassandra.migration.internal.util.scanner.filesystem.FileSystemResource
 import io.kotlintest.specs.FreeSpec
+import java.io.File
+import java.util.zip.CRC32
 
 /**
  * CqlMigrationResolverSpec unit tests.
@@ -33,14 +35,16 @@ class CqlMigrationResolverSpec : FreeSpec() {
      * Create the CQL migration resolver given its location.
      *
      * @param location The scripts location.
+     * @param parallelism The number of scripts loaded concurrently.
      * @return The CQL migration resolver.
      */
-    fun createMigrationResolver(location: String): CqlMigrationResolver {
+    fun createMigrationResolver(location: String, parallelism: Int = 1): CqlMigrationResolver {
         return CqlMigrationResolver(
                 Thread.currentThread().contextClassLoader,
                 Location(location),
                 "UTF-8",
-                timeout = 0
+                timeout = 0,
+                parallelism = parallelism
         )
     }
 
@@ -88,6 +92,60 @@ class CqlMigrationResolverSpec : FreeSpec() {
                 }
             }
 
+            "provided parallel resolution" - {
+
+                "should resolve the same migrations, in the same order" {
+                    val expected = createMigrationResolver("migration/integ_outoforder3").resolveMigrations()
+                    val migrations = createMigrationResolver("migration/integ_outoforder3", parallelism = 4).resolveMigrations()
+
+                    migrations.map { it.version } shouldBe expected.map { it.version }
+                    migrations.map { it.script } shouldBe expected.map { it.script }
+                    migrations.map { it.checksum } shouldBe expected.map { it.checksum }
+                }
+
+            }
+
+            "provided resolvers sharing a classpath location" - {
+
+                "should resolve the same migrations from the shared scan" {
+                    val expected = createMigrationResolver("migration/subdir").resolveMigrations()
+                    val migrations = createMigrationResolver("migration/subdir").resolveMigrations()
+
+                    migrations.size shouldBe expected.size
+                    migrations.zip(expected).forEach {
+                        (it.first !== it.second) shouldBe true
+                        it.first shouldBe it.second
+                        it.first.description shouldBe it.second.description
+                        it.first.physicalLocation!!.replace('\\', '/').endsWith(it.first.script!!) shouldBe true
+                    }
+                    migrations[1].description shouldBe "Populate table"
+                }
+
+            }
+
+            "provided lazy checksums" - {
+
+                "should only read the scripts when their checksum is needed" {
+                    val directory = createTempDir()
+                    try {
+                        File(directory, "V1__First.cql").writeText("CREATE TABLE test (id int PRIMARY KEY);\n")
+                        File(directory, "V2__Second.cql").writeText("DROP TABLE test;\n")
+                        val migrations = createMigrationResolver("filesystem:${directory.path}").resolveMigrations()
+                        val expected = File(directory, "V1__First.cql").readLines().map { it.toByteArray() }
+
+                        File(directory, "V2__Second.cql").delete()
+
+                        val crc32 = CRC32()
+                        expected.forEach { crc32.update(it) }
+                        migrations[0].checksum shouldBe crc32.value.toInt()
+                        shouldThrow<CassandraMigrationException> { migrations[1].checksum }
+                    } finally {
+                        directory.deleteRecursively()
+                    }
+                }
+
+            }
+
             "provided non-existing migration folder" - {
 
                 "should throw an exception" {
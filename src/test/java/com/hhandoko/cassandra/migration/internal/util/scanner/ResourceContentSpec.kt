@@ -0,0 +1,97 @@
+/**
+ * File     : ResourceContentSpec.kt
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner
+
+import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathResource
+import io.kotlintest.specs.FreeSpec
+import java.util.zip.CRC32
+
+/**
+ * ResourceContentSpec unit tests.
+ */
+class ResourceContentSpec : FreeSpec() {
+
+    /**
+     * The resource to load.
+     */
+    val resource = ClassPathResource("migration/cql/V1_2__Populate_table.cql", Thread.currentThread().contextClassLoader)
+
+    /**
+     * The resource prefixed with a UTF-8 BOM.
+     */
+    val bomResource = ClassPathResource("migration/bom/V1__Bom_prefixed.cql", Thread.currentThread().contextClassLoader)
+
+    /**
+     * @param resource The resource to calculate the checksum for.
+     * @return The crc-32 checksum of the resource lines, loaded as a string.
+     */
+    fun expectedChecksum(resource: Resource = this.resource): Int {
+        val crc32 = CRC32()
+        resource.loadAsString("UTF-8").lines().forEach { crc32.update(it.toByteArray(Charsets.UTF_8)) }
+        return crc32.value.toInt()
+    }
+
+    init {
+
+        "ResourceContent" - {
+
+            "should calculate the checksum of the resource lines" {
+                ResourceContent(resource, "UTF-8").checksum shouldBe expectedChecksum()
+            }
+
+            "should calculate the checksum of the resource lines without the UTF-8 BOM" {
+                bomResource.loadAsBytes()[0] shouldBe 0xEF.toByte()
+                ResourceContent(bomResource, "UTF-8").checksum shouldBe expectedChecksum(bomResource)
+            }
+
+            "should retain the content within the budget until it is read again" {
+                val budget = ResourceContent.Budget(1024 * 1024)
+                val content = ResourceContent(resource, "UTF-8", budget)
+
+                content.checksum shouldBe expectedChecksum()
+                budget.reservedBytes shouldBe resource.loadAsBytes().size.toLong()
+
+                content.openReader().use { it.readText() } shouldBe resource.loadAsString("UTF-8")
+                budget.reservedBytes shouldBe 0L
+                content.openReader().use { it.readText() } shouldBe resource.loadAsString("UTF-8")
+            }
+
+            "should release the retained content from the budget" {
+                val budget = ResourceContent.Budget(1024 * 1024)
+                val content = ResourceContent(resource, "UTF-8", budget)
+
+                content.checksum shouldBe expectedChecksum()
+                content.release()
+                budget.reservedBytes shouldBe 0L
+                content.openReader().use { it.readText() } shouldBe resource.loadAsString("UTF-8")
+            }
+
+            "should not retain the content exceeding the budget" {
+                val budget = ResourceContent.Budget(16)
+                val content = ResourceContent(resource, "UTF-8", budget)
+
+                content.checksum shouldBe expectedChecksum()
+                budget.reservedBytes shouldBe 0L
+                content.openReader().use { it.readText() } shouldBe resource.loadAsString("UTF-8")
+            }
+
+        }
+
+    }
+
+}
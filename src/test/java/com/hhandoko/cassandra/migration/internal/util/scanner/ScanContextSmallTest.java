@@ -0,0 +1,103 @@
+/**
+ * File     : ScanContextSmallTest.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hhandoko.cassandra.migration.internal.util.Location;
+import com.hhandoko.cassandra.migration.internal.util.scanner.classpath.ClassPathScanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for ScanContext.
+ */
+public class ScanContextSmallTest {
+    private final NavigableSet<String> index = new TreeSet<String>(Arrays.asList(
+            "db/migration/V1__First.cql", "db/migration/sub/V2__Second.cql", "db/migration2/V3__Third.cql", "db/other.cql"));
+
+    @Test
+    public void findByPrefix() {
+        assertEquals(Arrays.asList("db/migration/V1__First.cql", "db/migration/sub/V2__Second.cql"),
+                Arrays.asList(ScanContext.findByPrefix(index, "db/migration/").toArray()));
+        assertEquals(4, ScanContext.findByPrefix(index, "").size());
+        assertEquals(0, ScanContext.findByPrefix(index, "none/").size());
+    }
+
+    @Test
+    public void rootIndexedOnce() throws Exception {
+        ScanContext scanContext = new ScanContext();
+        final AtomicInteger count = new AtomicInteger();
+        Callable<NavigableSet<String>> indexer = new Callable<NavigableSet<String>>() {
+            @Override
+            public NavigableSet<String> call() {
+                count.incrementAndGet();
+                return index;
+            }
+        };
+
+        assertEquals(index, scanContext.getRootIndex("root", indexer));
+        assertEquals(index, scanContext.getRootIndex("root", indexer));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void failedRootIndexRetried() throws Exception {
+        ScanContext scanContext = new ScanContext();
+        try {
+            scanContext.getRootIndex("root", new Callable<NavigableSet<String>>() {
+                @Override
+                public NavigableSet<String> call() throws IOException {
+                    throw new IOException("Unreadable");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Unreadable", e.getMessage());
+        }
+
+        assertEquals(index, scanContext.getRootIndex("root", new Callable<NavigableSet<String>>() {
+            @Override
+            public NavigableSet<String> call() {
+                return index;
+            }
+        }));
+    }
+
+    @Test
+    public void sharedByScanners() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScanContext scanContext = new ScanContext();
+
+        Resource[] resources = new ClassPathScanner(classLoader, scanContext).scanForResources(new Location("migration/cql"), "V", ".cql");
+        Resource[] sharedResources = new ClassPathScanner(classLoader, scanContext).scanForResources(new Location("migration/subdir"), "V", ".cql");
+
+        assertEquals(3, resources.length);
+        assertEquals("migration/cql/V1_2__Populate_table.cql", resources[0].getLocation());
+        assertEquals(3, sharedResources.length);
+        assertEquals("migration/subdir/V1_1__Populate_table.cql", sharedResources[0].getLocation());
+    }
+}
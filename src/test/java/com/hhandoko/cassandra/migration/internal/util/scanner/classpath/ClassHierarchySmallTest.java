@@ -0,0 +1,110 @@
+/**
+ * File     : ClassHierarchySmallTest.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hhandoko.cassandra.migration.api.migration.java.JavaMigration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for ClassFileHeader and ClassHierarchy.
+ */
+public class ClassHierarchySmallTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The package of the dummy Java migrations.
+     */
+    private static final String DUMMY = "com/hhandoko/cassandra/migration/internal/resolver/java/dummy/";
+
+    private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+    @Test
+    public void readHeader() throws Exception {
+        InputStream inputStream = classLoader.getResourceAsStream(DUMMY + "V4__DummyExtendedAbstractJdbcMigration.class");
+        try {
+            ClassFileHeader header = ClassFileHeader.read(inputStream);
+
+            assertEquals(DUMMY + "V4__DummyExtendedAbstractJdbcMigration", header.getClassName());
+            assertEquals(DUMMY + "DummyAbstractJavaMigration", header.getSuperClassName());
+            assertEquals(Collections.<String>emptyList(), header.getInterfaceNames());
+            assertTrue(header.isConcreteClass());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void readObjectHeader() throws Exception {
+        InputStream inputStream = classLoader.getResourceAsStream("java/lang/Object.class");
+        if (inputStream == null) {
+            // No class files for the JDK classes (e.g. modular runtime image)
+            return;
+        }
+        try {
+            assertNull(ClassFileHeader.read(inputStream).getSuperClassName());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidHeader() throws Exception {
+        ClassFileHeader.read(new ByteArrayInputStream(new byte[] {0x43, 0x51, 0x4C, 0x00}));
+    }
+
+    @Test
+    public void candidates() {
+        ClassHierarchy classHierarchy = new ClassHierarchy(classLoader, JavaMigration.class);
+
+        assertTrue(classHierarchy.isCandidate(DUMMY + "V2__InterfaceBasedMigration.class"));
+        assertTrue(classHierarchy.isCandidate(DUMMY + "Version3dot5.class"));
+        assertTrue(classHierarchy.isCandidate(DUMMY + "V4__DummyExtendedAbstractJdbcMigration.class"));
+
+        assertFalse(classHierarchy.isCandidate(DUMMY + "DummyAbstractJavaMigration.class"));
+        assertFalse(classHierarchy.isCandidate(DUMMY + "SabotageEnum.class"));
+        assertFalse(classHierarchy.isCandidate(
+                "com/hhandoko/cassandra/migration/internal/util/scanner/classpath/ClassHierarchySmallTest.class"));
+    }
+
+    @Test
+    public void unreadableCandidates() throws Exception {
+        temporaryFolder.newFile("Broken.class");
+        ClassLoader brokenClassLoader =
+                new URLClassLoader(new URL[] {temporaryFolder.getRoot().toURI().toURL()}, classLoader);
+        ClassHierarchy classHierarchy = new ClassHierarchy(brokenClassLoader, JavaMigration.class);
+
+        assertTrue(classHierarchy.isCandidate("Broken.class"));
+        assertTrue(classHierarchy.isCandidate("Missing.class"));
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * File     : JarFileIndexSmallTest.java
+ * License  :
+ *   Copyright (c) 2016 - 2018 cassandra-migration Contributors
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.hhandoko.cassandra.migration.internal.util.scanner.classpath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for JarFileIndex.
+ */
+public class JarFileIndexSmallTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Writes a jar file with these entries.
+     *
+     * @param file The jar file.
+     * @param entryNames The entry names (directory entries end with a slash).
+     */
+    private void writeJar(File file, String... entryNames) throws Exception {
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String entryName : entryNames) {
+                output.putNextEntry(new JarEntry(entryName));
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void indexJarWithoutDirectoryEntries() throws Exception {
+        File file = temporaryFolder.newFile("flat.jar");
+        writeJar(file, "db/migration/V2__Second.cql", "db/migration/V1__First.cql", "db/other.cql");
+
+        JarFileIndex index = JarFileIndex.forFile(file);
+
+        assertFalse(index.hasDirectoryEntries());
+        assertEquals(Arrays.asList("db/migration/V1__First.cql", "db/migration/V2__Second.cql"),
+                Arrays.asList(index.findEntryNames("db/migration").toArray()));
+        assertSame(index, JarFileIndex.forFile(file));
+    }
+
+    @Test
+    public void indexJarWithDirectoryEntries() throws Exception {
+        File file = temporaryFolder.newFile("dirs.jar");
+        writeJar(file, "db/", "db/migration/", "db/migration/V1__First.cql");
+
+        JarFileIndex index = JarFileIndex.forFile(file);
+
+        assertTrue(index.hasDirectoryEntries());
+        assertEquals(0, index.findEntryNames("db/migration").size());
+    }
+
+    @Test
+    public void reindexChangedJar() throws Exception {
+        File file = temporaryFolder.newFile("changed.jar");
+        writeJar(file, "db/migration/V1__First.cql");
+        JarFileIndex index = JarFileIndex.forFile(file);
+
+        writeJar(file, "db/migration/V1__First.cql", "db/migration/V2__Second.cql");
+        file.setLastModified(file.lastModified() + 2000);
+        JarFileIndex changedIndex = JarFileIndex.forFile(file);
+
+        assertNotSame(index, changedIndex);
+        assertEquals(2, changedIndex.findEntryNames("db/migration").size());
+    }
+}
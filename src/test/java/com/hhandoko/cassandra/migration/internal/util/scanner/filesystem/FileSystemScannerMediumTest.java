@@ -18,16 +18,86 @@
  */
 package com.hhandoko.cassandra.migration.internal.util.scanner.filesystem;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.hhandoko.cassandra.migration.internal.util.Location;
+import com.hhandoko.cassandra.migration.internal.util.scanner.Resource;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * Test for FileSystemScanner.
  */
 public class FileSystemScannerMediumTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void nonExistentDirectory() throws Exception {
         new FileSystemScanner().scanForResources(new Location("filesystem:/invalid-path"), "", "");
     }
+
+    @Test
+    public void filterDuringWalk() throws Exception {
+        File root = createTree();
+
+        Resource[] resources =
+                new FileSystemScanner().scanForResources(new Location("filesystem:" + root.getPath()), "V", ".cql");
+
+        assertEquals(3, resources.length);
+        assertEquals(new File(root, "V1__First.cql").getPath(), resources[0].getLocation());
+        assertEquals(new File(root, "sub/V2__Second.cql").getPath(), resources[1].getLocation());
+        assertEquals(new File(root, "sub/deeper/V3__Third.cql").getPath(), resources[2].getLocation());
+    }
+
+    @Test
+    public void parallelWalk() throws Exception {
+        File root = createTree();
+        Location location = new Location("filesystem:" + root.getPath());
+
+        Resource[] sequential = new FileSystemScanner().scanForResources(location, "V", ".cql");
+        Resource[] parallel = new FileSystemScanner(4).scanForResources(location, "V", ".cql");
+
+        assertEquals(3, parallel.length);
+        for (int i = 0; i < sequential.length; i++) {
+            assertEquals(sequential[i].getLocation(), parallel[i].getLocation());
+        }
+    }
+
+    @Test
+    public void parallelWalkSkipsSymbolicLinkCycles() throws Exception {
+        File root = createTree();
+        Files.createSymbolicLink(new File(root, "sub/deeper/loop").toPath(), root.toPath());
+        Location location = new Location("filesystem:" + root.getPath());
+
+        Resource[] sequential = new FileSystemScanner().scanForResources(location, "V", ".cql");
+        Resource[] parallel = new FileSystemScanner(4).scanForResources(location, "V", ".cql");
+
+        assertEquals(3, parallel.length);
+        for (int i = 0; i < sequential.length; i++) {
+            assertEquals(sequential[i].getLocation(), parallel[i].getLocation());
+        }
+    }
+
+    private File createTree() throws IOException {
+        File root = temporaryFolder.newFolder("migration");
+        File deeper = new File(root, "sub/deeper");
+        deeper.mkdirs();
+        new File(root, "empty").mkdirs();
+
+        new File(root, "V1__First.cql").createNewFile();
+        new File(root, "V.cql").createNewFile();
+        new File(root, "README.txt").createNewFile();
+        new File(root, "sub/V2__Second.cql").createNewFile();
+        new File(root, "sub/V2__Second.cql.bak").createNewFile();
+        new File(deeper, "V3__Third.cql").createNewFile();
+        new File(deeper, "R__Repeatable.cql").createNewFile();
+        return root;
+    }
 }